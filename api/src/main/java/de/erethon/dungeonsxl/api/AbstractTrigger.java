@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014-2021 Daniel Saukel
+ *
+ * This library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNULesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.api;
+
+import de.erethon.dungeonsxl.api.sign.DungeonSign;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bukkit.entity.Player;
+
+/**
+ * Skeletal implementation of a {@link Trigger} that reports its state changes to the signs that listen to it.
+ * <p>
+ * One trigger may be shared by many signs; a state change notifies each of them once without iterating over their other triggers.
+ *
+ * @author Daniel Saukel
+ */
+public abstract class AbstractTrigger implements Trigger {
+
+    private List<DungeonSign> listeners = new ArrayList<>();
+    private boolean triggered;
+    private Player player;
+
+    @Override
+    public boolean isTriggered() {
+        return triggered;
+    }
+
+    @Override
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Sets the state of the trigger and notifies the listening signs if it changed.
+     *
+     * @param triggered the new state
+     * @param player    the player who changed the state or null if no one in particular did
+     */
+    public void setTriggered(boolean triggered, Player player) {
+        this.player = player;
+        if (this.triggered == triggered) {
+            return;
+        }
+        this.triggered = triggered;
+        // Copy sothat signs may stop listening when they are triggered
+        for (DungeonSign sign : new ArrayList<>(listeners)) {
+            if (listeners.contains(sign)) {
+                sign.onTriggerChanged(this, triggered);
+            }
+        }
+    }
+
+    /**
+     * Returns the signs that listen to this trigger.
+     *
+     * @return an unmodifiable view of the signs that listen to this trigger
+     */
+    public List<DungeonSign> getListeners() {
+        return Collections.unmodifiableList(listeners);
+    }
+
+    @Override
+    public boolean addListener(DungeonSign sign) {
+        if (!listeners.contains(sign)) {
+            listeners.add(sign);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean removeListener(DungeonSign sign) {
+        return listeners.remove(sign);
+    }
+
+}
@@ -14,6 +14,9 @@
  */
 package de.erethon.dungeonsxl.api;
 
+import de.erethon.dungeonsxl.api.dungeon.GameRuleRegistry;
+import de.erethon.dungeonsxl.api.sign.SignRegistry;
+
 /**
  * Class that manages initialization of several registries.
  * <p>
@@ -22,4 +25,26 @@ package de.erethon.dungeonsxl.api;
  * @author Daniel Saukel
  */
 public interface DungeonModule {
+
+    /**
+     * Registers the game rules of this module.
+     * <p>
+     * This is called when the module is {@link DungeonsAPI#registerModule(DungeonModule) registered}, which must happen before the server has finished
+     * starting because the registry is frozen afterwards.
+     *
+     * @param gameRuleRegistry the game rule registry
+     */
+    default void initializeGameRules(GameRuleRegistry gameRuleRegistry) {
+    }
+
+    /**
+     * Registers the sign types of this module.
+     * <p>
+     * This is called when the module is {@link DungeonsAPI#registerModule(DungeonModule) registered}.
+     *
+     * @param signRegistry the sign registry
+     */
+    default void initializeSignRegistry(SignRegistry signRegistry) {
+    }
+
 }
@@ -20,6 +20,7 @@ import de.erethon.dungeonsxl.api.mob.DungeonMob;
 import de.erethon.dungeonsxl.api.player.GroupAdapter;
 import de.erethon.dungeonsxl.api.player.PlayerCache;
 import de.erethon.dungeonsxl.api.player.PlayerGroup;
+import de.erethon.dungeonsxl.api.sign.SignRegistry;
 import de.erethon.dungeonsxl.api.world.EditWorld;
 import de.erethon.dungeonsxl.api.world.GameWorld;
 import org.bukkit.Color;
@@ -69,6 +70,20 @@ public interface DungeonsAPI extends Plugin {
      */
     void registerModule(DungeonModule module);
 
+    /**
+     * Returns the timer wheel that drives delayed and repeating sign actions.
+     *
+     * @return the timer wheel that drives delayed and repeating sign actions
+     */
+    TimerWheel getTimerWheel();
+
+    /**
+     * Returns the registry of all sign types.
+     *
+     * @return the registry of all sign types
+     */
+    SignRegistry getSignRegistry();
+
     /**
      * Makes DungeonsXL track external group and synchronize them with its own groups.
      *
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2014-2021 Daniel Saukel
+ *
+ * This library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNULesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * A hierarchical timer wheel that drives delayed and repeating actions, like the ones of {@link de.erethon.dungeonsxl.api.sign.Windup} signs, with a
+ * single scheduler task.
+ * <p>
+ * Timers are sorted into buckets by their due tick, so a tick only touches the timers that are actually due. Timers that are due in the far future are
+ * kept in coarser levels and cascade down as they come closer. Timers may be grouped by an owner, e.g. a {@link de.erethon.dungeonsxl.api.world.GameWorld},
+ * to cancel all of them at once.
+ * <p>
+ * The wheel is not thread-safe and must only be used on the main thread.
+ *
+ * @author Daniel Saukel
+ */
+public class TimerWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELAY = (1L << SLOT_BITS * LEVELS) - 1;
+
+    /**
+     * A scheduled action.
+     */
+    public class Timer {
+
+        private Runnable action;
+        private Object owner;
+        private long period;
+        private long due;
+        private boolean cancelled;
+
+        private Timer previous, next;
+        private Timer bucket;
+
+        private Timer(Runnable action, Object owner, long period) {
+            this.action = action;
+            this.owner = owner;
+            this.period = period;
+        }
+
+        /**
+         * Returns the owner the timer is grouped by or null.
+         *
+         * @return the owner the timer is grouped by
+         */
+        public Object getOwner() {
+            return owner;
+        }
+
+        /**
+         * Returns the period in ticks or 0 if the timer does not repeat.
+         *
+         * @return the period in ticks
+         */
+        public long getPeriod() {
+            return period;
+        }
+
+        /**
+         * Returns if the timer is cancelled or, if it does not repeat, done.
+         *
+         * @return if the timer is cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Cancels the timer.
+         */
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            unlink(this);
+            if (owner != null) {
+                Set<Timer> group = groups.get(owner);
+                if (group != null && group.remove(this) && group.isEmpty()) {
+                    groups.remove(owner);
+                }
+            }
+        }
+
+    }
+
+    private Timer[][] wheel = new Timer[LEVELS][SLOTS];
+    private Map<Object, Set<Timer>> groups = new HashMap<>();
+    private long tick;
+    private int size;
+    private BukkitTask task;
+
+    public TimerWheel() {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                // Sentinel of a circular list
+                Timer sentinel = new Timer(null, null, 0);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                wheel[level][slot] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Starts the task that advances the wheel every tick.
+     *
+     * @param plugin the plugin that owns the task
+     */
+    public void start(Plugin plugin) {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, () -> advance(plugin), 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops the task and cancels all timers.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (Set<Timer> group : new ArrayList<>(groups.values())) {
+            for (Timer timer : new ArrayList<>(group)) {
+                timer.cancel();
+            }
+        }
+        for (Timer[] level : wheel) {
+            for (Timer sentinel : level) {
+                while (sentinel.next != sentinel) {
+                    sentinel.next.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the action once after the delay.
+     *
+     * @param action the action
+     * @param owner  the owner to group the timer by or null
+     * @param delay  the delay in ticks; at least 1
+     * @return the timer
+     */
+    public Timer schedule(Runnable action, Object owner, long delay) {
+        return schedule(action, owner, delay, 0L);
+    }
+
+    /**
+     * Runs the action after the delay and then repeatedly until the timer is cancelled.
+     *
+     * @param action the action
+     * @param owner  the owner to group the timer by or null
+     * @param delay  the delay in ticks; at least 1
+     * @param period the period in ticks or 0 to run the action only once
+     * @return the timer
+     */
+    public Timer schedule(Runnable action, Object owner, long delay, long period) {
+        Timer timer = new Timer(action, owner, Math.max(0L, period));
+        timer.due = tick + Math.max(1L, delay);
+        if (owner != null) {
+            groups.computeIfAbsent(owner, o -> new LinkedHashSet<>()).add(timer);
+        }
+        insert(timer);
+        return timer;
+    }
+
+    /**
+     * Cancels all timers of the owner.
+     *
+     * @param owner the owner
+     * @return the amount of cancelled timers
+     */
+    public int cancelAll(Object owner) {
+        Set<Timer> group = groups.remove(owner);
+        if (group == null) {
+            return 0;
+        }
+        for (Timer timer : group) {
+            timer.cancelled = true;
+            unlink(timer);
+        }
+        return group.size();
+    }
+
+    /**
+     * Returns the amount of scheduled timers.
+     *
+     * @return the amount of scheduled timers
+     */
+    public int size() {
+        return size;
+    }
+
+    private void advance(Plugin plugin) {
+        tick++;
+        // Move timers of coarser levels down when the finer level wraps around
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & (1L << SLOT_BITS * level) - 1) == 0) {
+                for (Timer timer : drain(wheel[level][(int) (tick >>> SLOT_BITS * level) & SLOT_MASK])) {
+                    insert(timer);
+                }
+            }
+        }
+
+        for (Timer timer : drain(wheel[0][(int) tick & SLOT_MASK])) {
+            if (timer.cancelled) {
+                continue;
+            }
+            if (timer.due > tick) {
+                insert(timer);
+                continue;
+            }
+            try {
+                timer.action.run();
+            } catch (Throwable throwable) {
+                plugin.getLogger().log(Level.SEVERE, "Timer " + timer.action + " threw an exception", throwable);
+            }
+            if (timer.cancelled) {
+                continue;
+            }
+            if (timer.period > 0) {
+                timer.due = tick + timer.period;
+                insert(timer);
+            } else {
+                timer.cancel();
+            }
+        }
+    }
+
+    private void insert(Timer timer) {
+        long delay = Math.min(timer.due - tick, MAX_DELAY);
+        int level = 0;
+        while (delay >= SLOTS << SLOT_BITS * level && level < LEVELS - 1) {
+            level++;
+        }
+        long due = tick + delay;
+        // The bucket must not be drained before the timer is due, so coarser levels round up
+        Timer sentinel = wheel[level][(int) (due >>> SLOT_BITS * level) & SLOT_MASK];
+        timer.bucket = sentinel;
+        timer.previous = sentinel.previous;
+        timer.next = sentinel;
+        sentinel.previous.next = timer;
+        sentinel.previous = timer;
+        size++;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.bucket == null) {
+            return;
+        }
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.previous = null;
+        timer.next = null;
+        timer.bucket = null;
+        size--;
+    }
+
+    private List<Timer> drain(Timer sentinel) {
+        List<Timer> timers = new ArrayList<>();
+        while (sentinel.next != sentinel) {
+            Timer timer = sentinel.next;
+            unlink(timer);
+            timers.add(timer);
+        }
+        return timers;
+    }
+
+}
@@ -14,6 +14,7 @@
  */
 package de.erethon.dungeonsxl.api;
 
+import de.erethon.dungeonsxl.api.sign.DungeonSign;
 import org.bukkit.entity.Player;
 
 /**
@@ -30,4 +31,27 @@ public interface Trigger {
     @Deprecated
     Player getPlayer();
 
+    /**
+     * Registers a sign that is to be notified through {@link DungeonSign#onTriggerChanged(Trigger, boolean)} whenever {@link #isTriggered()} changes.
+     * <p>
+     * Triggers that do not report their state changes return false; signs then fall back to checking all of their triggers in
+     * {@link DungeonSign#updateTriggers(Trigger)}. See {@link AbstractTrigger} for an implementation that does.
+     *
+     * @param sign the sign
+     * @return if the trigger reports its state changes to the sign
+     */
+    default boolean addListener(DungeonSign sign) {
+        return false;
+    }
+
+    /**
+     * Unregisters a sign that was registered through {@link #addListener(DungeonSign)}.
+     *
+     * @param sign the sign
+     * @return if the sign was registered
+     */
+    default boolean removeListener(DungeonSign sign) {
+        return false;
+    }
+
 }
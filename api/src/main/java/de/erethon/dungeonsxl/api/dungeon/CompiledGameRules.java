@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2014-2021 Daniel Saukel
+ *
+ * This library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNULesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.api.dungeon;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * A frozen, fully merged snapshot of a {@link GameRuleContainer}.
+ * <p>
+ * Every rule that has a state in the source container or a non-null {@link GameRule#getDefaultValue() default value} is set. Collection and map states are
+ * copied into unmodifiable views and Boolean, Integer and Long states are additionally stored unboxed, so reading a compiled rule never allocates.
+ * <p>
+ * A compiled snapshot does not track changes of the container it was compiled from. Use {@link #compile(GameRuleContainer)} again to refresh it.
+ *
+ * @author Daniel Saukel
+ */
+public final class CompiledGameRules {
+
+    // Snapshots of games that use the default implementation of Game#getCompiledRules()
+    private static final Map<Game, CompiledGameRules> SNAPSHOTS = new WeakHashMap<>();
+
+    private final Object[] states;
+    private final boolean[] booleans;
+    private final int[] ints;
+    private final long[] longs;
+    private final BitSet present;
+    private final Map<GameRule<?>, Object> overflow = new HashMap<>(4);
+
+    private CompiledGameRules(int size) {
+        states = new Object[size];
+        booleans = new boolean[size];
+        ints = new int[size];
+        longs = new long[size];
+        present = new BitSet(size);
+    }
+
+    /**
+     * Compiles the given rules. States that are not set are filled with the {@link GameRuleContainer#DEFAULT_VALUES}.
+     *
+     * @param rules the rules to compile
+     * @return the compiled snapshot
+     */
+    public static CompiledGameRules compile(GameRuleContainer rules) {
+        GameRuleContainer merged = new GameRuleContainer(rules);
+        merged.merge(GameRuleContainer.DEFAULT_VALUES);
+
+        CompiledGameRules compiled = new CompiledGameRules(GameRule.REGISTRY.size());
+        for (int i = merged.nextSetSlot(0); i >= 0; i = merged.nextSetSlot(i + 1)) {
+            int ordinal = merged.getRule(i).getOrdinal();
+            Object state = freeze(merged.getState(i));
+            compiled.states[ordinal] = state;
+            compiled.present.set(ordinal);
+            if (state instanceof Boolean) {
+                compiled.booleans[ordinal] = (Boolean) state;
+            } else if (state instanceof Integer) {
+                compiled.ints[ordinal] = (Integer) state;
+            } else if (state instanceof Long) {
+                compiled.longs[ordinal] = (Long) state;
+            }
+        }
+        // Rules that are not registered are rare enough to be looked up by hash
+        for (Map.Entry<GameRule<?>, Object> entry : merged.getOverflow().entrySet()) {
+            compiled.overflow.put(entry.getKey(), freeze(entry.getValue()));
+        }
+        return compiled;
+    }
+
+    static CompiledGameRules of(Game game) {
+        CompiledGameRules compiled = SNAPSHOTS.get(game);
+        if (compiled == null) {
+            compiled = recompile(game);
+        }
+        return compiled;
+    }
+
+    static CompiledGameRules recompile(Game game) {
+        CompiledGameRules compiled = compile(game.getRules());
+        SNAPSHOTS.put(game, compiled);
+        return compiled;
+    }
+
+    private static Object freeze(Object state) {
+        if (state instanceof List) {
+            return Collections.unmodifiableList(new ArrayList<>((List<?>) state));
+        } else if (state instanceof Set) {
+            return Collections.unmodifiableSet(new LinkedHashSet<>((Set<?>) state));
+        } else if (state instanceof Collection) {
+            return Collections.unmodifiableCollection(new ArrayList<>((Collection<?>) state));
+        } else if (state instanceof Map) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>((Map<?, ?>) state));
+        } else {
+            return state;
+        }
+    }
+
+    /**
+     * Returns if the rule has a state in this snapshot.
+     * <p>
+     * This is only false for rules whose default value is null, like {@link GameRule#RAIN}, and that are not set by any rule provider.
+     *
+     * @param rule the rule
+     * @return if the rule has a state in this snapshot
+     */
+    public boolean isSet(GameRule<?> rule) {
+        int ordinal = rule.getOrdinal();
+        if (ordinal >= 0 && ordinal < states.length) {
+            return present.get(ordinal);
+        }
+        return overflow.containsKey(rule);
+    }
+
+    /**
+     * Returns the state of the rule or null if it is not {@link #isSet(GameRule) set}.
+     * <p>
+     * Collection and map states are unmodifiable.
+     *
+     * @param <V>  the type of the value of the rule
+     * @param rule the rule
+     * @return the state of the rule
+     */
+    public <V> V getState(GameRule<V> rule) {
+        int ordinal = rule.getOrdinal();
+        if (ordinal >= 0 && ordinal < states.length) {
+            return (V) states[ordinal];
+        }
+        return (V) overflow.get(rule);
+    }
+
+    /**
+     * Returns the unboxed state of the rule or false if it is not {@link #isSet(GameRule) set}.
+     *
+     * @param rule the rule
+     * @return the unboxed state of the rule
+     */
+    public boolean getBoolean(GameRule<Boolean> rule) {
+        int ordinal = rule.getOrdinal();
+        if (ordinal >= 0 && ordinal < booleans.length) {
+            return booleans[ordinal];
+        }
+        return Boolean.TRUE.equals(overflow.get(rule));
+    }
+
+    /**
+     * Returns the unboxed state of the rule or 0 if it is not {@link #isSet(GameRule) set}.
+     *
+     * @param rule the rule
+     * @return the unboxed state of the rule
+     */
+    public int getInt(GameRule<Integer> rule) {
+        int ordinal = rule.getOrdinal();
+        if (ordinal >= 0 && ordinal < ints.length) {
+            return ints[ordinal];
+        }
+        Object state = overflow.get(rule);
+        return state instanceof Integer ? (Integer) state : 0;
+    }
+
+    /**
+     * Returns the unboxed state of the rule or 0 if it is not {@link #isSet(GameRule) set}.
+     *
+     * @param rule the rule
+     * @return the unboxed state of the rule
+     */
+    public long getLong(GameRule<Long> rule) {
+        int ordinal = rule.getOrdinal();
+        if (ordinal >= 0 && ordinal < longs.length) {
+            return longs[ordinal];
+        }
+        Object state = overflow.get(rule);
+        return state instanceof Long ? (Long) state : 0L;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{rules=" + (present.cardinality() + overflow.size()) + "}";
+    }
+
+}
@@ -119,6 +119,29 @@ public interface Game {
         return getDungeon().getRules();
     }
 
+    /**
+     * Returns the compiled snapshot of the {@link #getRules() rules} of this game.
+     * <p>
+     * Unlike {@link #getRules()}, reading rules from the snapshot does not allocate and is thus preferable in listeners.
+     * <p>
+     * The default implementation compiles the rules on the first call and keeps the snapshot until {@link #compileRules()} is called.
+     *
+     * @return the compiled snapshot of the rules of this game
+     */
+    default CompiledGameRules getCompiledRules() {
+        return CompiledGameRules.of(this);
+    }
+
+    /**
+     * Rebuilds the {@link #getCompiledRules() compiled rules} from the current {@link #getRules() rules}.
+     * <p>
+     * This is done when a floor is started and when the plugin data is reloaded. Implementations that override {@link #getCompiledRules()}
+     * must override this method as well.
+     */
+    default void compileRules() {
+        CompiledGameRules.recompile(this);
+    }
+
     /**
      * Returns a read-only List of the remaining floors to play.
      *
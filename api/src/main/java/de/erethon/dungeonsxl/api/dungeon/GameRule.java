@@ -21,7 +21,6 @@ import org.bukkit.Difficulty;
 import org.bukkit.GameMode;
 import org.bukkit.configuration.ConfigurationSection;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -35,6 +34,11 @@ import java.util.Map;
  */
 public class GameRule<V> {
 
+    /**
+     * The registry of all game rules that can be stored in a {@link GameRuleContainer}.
+     */
+    public static final GameRuleRegistry REGISTRY = new GameRuleRegistry();
+
     /**
      * Shall players play the dungeon with their own items or do you want to use classes?
      */
@@ -258,27 +262,25 @@ public class GameRule<V> {
     /**
      * An array of all game rules that exist natively in DungeonsXL.
      */
-    public static final GameRule[] VALUES = values();
+    public static final GameRule[] VALUES = {
+        KEEP_INVENTORY_ON_ENTER, KEEP_INVENTORY_ON_ESCAPE, KEEP_INVENTORY_ON_FINISH, KEEP_INVENTORY_ON_DEATH, RESET_CLASS_INVENTORY_ON_RESPAWN,
+        ESCAPE_LOCATION, FINISH_LOCATION, GAME_GOAL, GAME_MODE, DIFFICULTY, FOOD_LEVEL, DEATH_SCREEN, FLY, BREAK_BLOCKS, BREAK_PLACED_BLOCKS,
+        FIRE_TICK, RAIN, THUNDER, TIME, PLAYER_VERSUS_PLAYER, FRIENDLY_FIRE, INITIAL_LIVES, INITIAL_GROUP_LIVES, INITIAL_SCORE, SCORE_GOAL,
+        TIME_LAST_PLAYED_REQUIRED_DUNGEONS, TIME_TO_NEXT_PLAY_AFTER_START, TIME_TO_NEXT_PLAY_AFTER_FINISH, TIME_TO_NEXT_LOOT, TIME_TO_NEXT_WAVE,
+        TIME_TO_FINISH, TIME_UNTIL_KICK_OFFLINE_PLAYER, REQUIREMENTS, MUST_FINISH_ONE, MUST_FINISH_ALL, REWARDS, GAME_COMMAND_WHITELIST,
+        GAME_PERMISSIONS, TITLE, SUBTITLE, ACTION_BAR, CHAT, TITLE_FADE_IN, TITLE_FADE_OUT, TITLE_SHOW, MESSAGES, GROUP_TAG_ENABLED,
+        USE_NATIVE_CITIZENS_REGISTRY
+    };
 
-    private static GameRule[] values() {
-        Field[] fields = GameRule.class.getFields();
-        GameRule[] values = new GameRule[fields.length - 1];
-        int i = 0;
-        for (Field field : fields) {
-            try {
-                Object object = field.get(null);
-                if (object instanceof GameRule) {
-                    values[i++] = (GameRule) object;
-                }
-            } catch (IllegalArgumentException | IllegalAccessException exception) {
-                exception.printStackTrace();
-            }
+    static {
+        for (GameRule rule : VALUES) {
+            REGISTRY.add(rule);
         }
-        return values;
     }
 
     protected Class<V> type;
     protected ConfigReader<V> reader;
+    private int ordinal = -1;
     private String key;
     private V defaultValue;
 
@@ -304,6 +306,22 @@ public class GameRule<V> {
         this.reader = reader;
     }
 
+    /**
+     * Returns the index of the slot that stores the state of this game rule in a {@link GameRuleContainer} or -1 if the rule is not
+     * {@link GameRuleRegistry#register(GameRule) registered}.
+     * <p>
+     * Ordinals are assigned by the {@link #REGISTRY} in the order in which game rules are registered and never change during runtime.
+     *
+     * @return the index of the slot that stores the state of this game rule in a {@link GameRuleContainer}
+     */
+    public final int getOrdinal() {
+        return ordinal;
+    }
+
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
     /**
      * Returns the configuration key of the game rule.
      *
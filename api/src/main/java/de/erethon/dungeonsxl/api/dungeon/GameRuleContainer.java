@@ -14,11 +14,18 @@
  */
 package de.erethon.dungeonsxl.api.dungeon;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * A container for {@link GameRule}s.
+ * <p>
+ * States are stored in slots indexed by {@link GameRule#getOrdinal()}, so reads do not need any hashing. States of rules that are not
+ * {@link GameRuleRegistry#register(GameRule) registered}, e.g. because they are created by a plugin that is loaded after the registry is frozen, are kept in
+ * a small overflow map instead.
  *
  * @author Daniel Saukel
  */
@@ -30,18 +37,24 @@ public class GameRuleContainer {
     public static final GameRuleContainer DEFAULT_VALUES = new GameRuleContainer();
 
     static {
-        for (GameRule rule : GameRule.VALUES) {
+        for (GameRule rule : GameRule.REGISTRY) {
             DEFAULT_VALUES.setState(rule, rule.getDefaultValue());
         }
     }
 
-    private Map<GameRule<?>, Object> rules;
+    private GameRule<?>[] rules;
+    private Object[] states;
+    private BitSet present;
+    private Map<GameRule<?>, Object> overflow;
 
     /**
      * Initializes an emtpy GameRuleContainer.
      */
     public GameRuleContainer() {
-        rules = new HashMap<>();
+        int size = GameRule.REGISTRY.size();
+        rules = new GameRule<?>[size];
+        states = new Object[size];
+        present = new BitSet(size);
     }
 
     /**
@@ -50,7 +63,12 @@ public class GameRuleContainer {
      * @param container the container to copy
      */
     public GameRuleContainer(GameRuleContainer container) {
-        rules = new HashMap<>(container.rules);
+        rules = container.rules.clone();
+        states = container.states.clone();
+        present = (BitSet) container.present.clone();
+        if (container.overflow != null) {
+            overflow = new LinkedHashMap<>(container.overflow);
+        }
     }
 
     /**
@@ -61,11 +79,11 @@ public class GameRuleContainer {
      * @return the state of the rule
      */
     public <V> V getState(GameRule<V> rule) {
-        if (!rules.containsKey(rule)) {
-            return null;
-        } else {
-            return (V) rules.get(rule);
+        int ordinal = rule.getOrdinal();
+        if (ordinal >= 0 && ordinal < states.length && present.get(ordinal)) {
+            return (V) states[ordinal];
         }
+        return overflow != null ? (V) overflow.get(rule) : null;
     }
 
     /**
@@ -77,11 +95,20 @@ public class GameRuleContainer {
      */
     public <V> void setState(GameRule<V> rule, V state) {
         if (state == null) {
-            rules.remove(rule);
-        } else if (rule.isValidValue(state)) {
-            rules.put(rule, state);
-        } else {
+            unsetState(rule);
+        } else if (!rule.isValidValue(state)) {
             throw new IllegalArgumentException("state is not a valid value for rule " + rule.getKey());
+        } else if (rule.getOrdinal() == -1) {
+            if (overflow == null) {
+                overflow = new LinkedHashMap<>(4);
+            }
+            overflow.put(rule, state);
+        } else {
+            int ordinal = rule.getOrdinal();
+            ensureCapacity(ordinal);
+            rules[ordinal] = rule;
+            states[ordinal] = state;
+            present.set(ordinal);
         }
     }
 
@@ -91,7 +118,15 @@ public class GameRuleContainer {
      * @param rule the GameRule to unset
      */
     public void unsetState(GameRule<?> rule) {
-        rules.remove(rule);
+        int ordinal = rule.getOrdinal();
+        if (ordinal >= 0 && ordinal < states.length) {
+            rules[ordinal] = null;
+            states[ordinal] = null;
+            present.clear(ordinal);
+        }
+        if (overflow != null) {
+            overflow.remove(rule);
+        }
     }
 
     /**
@@ -100,12 +135,82 @@ public class GameRuleContainer {
      * @param subsidiary the GameRules that override the values that are null.
      */
     public void merge(GameRuleContainer subsidiary) {
-        subsidiary.rules.entrySet().forEach(e -> e.getKey().merge(this, subsidiary, this));
+        for (int i = subsidiary.present.nextSetBit(0); i >= 0; i = subsidiary.present.nextSetBit(i + 1)) {
+            subsidiary.rules[i].merge(this, subsidiary, this);
+        }
+        if (subsidiary.overflow != null) {
+            for (GameRule<?> rule : subsidiary.overflow.keySet()) {
+                rule.merge(this, subsidiary, this);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the next slot that is set, starting with the given index, or -1 if there is none.
+     *
+     * @param from the index to start with
+     * @return the index of the next slot that is set or -1 if there is none
+     */
+    int nextSetSlot(int from) {
+        return present.nextSetBit(from);
+    }
+
+    /**
+     * Returns the game rule whose state is stored in the given slot.
+     *
+     * @param slot the slot index
+     * @return the game rule whose state is stored in the given slot
+     */
+    GameRule<?> getRule(int slot) {
+        return rules[slot];
+    }
+
+    /**
+     * Returns the state stored in the given slot.
+     *
+     * @param slot the slot index
+     * @return the state stored in the given slot
+     */
+    Object getState(int slot) {
+        return states[slot];
+    }
+
+    /**
+     * Returns the states of the rules that are not registered.
+     *
+     * @return the states of the rules that are not registered
+     */
+    Map<GameRule<?>, Object> getOverflow() {
+        return overflow != null ? overflow : Collections.emptyMap();
+    }
+
+    /**
+     * Grows the slot arrays if a game rule has been registered after this container was created.
+     *
+     * @param ordinal the ordinal that needs a slot
+     */
+    private void ensureCapacity(int ordinal) {
+        if (ordinal < states.length) {
+            return;
+        }
+        int size = Math.max(ordinal + 1, GameRule.REGISTRY.size());
+        rules = Arrays.copyOf(rules, size);
+        states = Arrays.copyOf(states, size);
     }
 
     @Override
     public String toString() {
-        return "GameRuleContainer{" + rules + "}";
+        StringBuilder builder = new StringBuilder("GameRuleContainer{");
+        String separator = "";
+        for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+            builder.append(separator).append(rules[i]).append('=').append(states[i]);
+            separator = ", ";
+        }
+        for (Map.Entry<GameRule<?>, Object> entry : getOverflow().entrySet()) {
+            builder.append(separator).append(entry.getKey()).append('=').append(entry.getValue());
+            separator = ", ";
+        }
+        return builder.append('}').toString();
     }
 
 }
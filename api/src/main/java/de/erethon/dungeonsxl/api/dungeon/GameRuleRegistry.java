@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014-2021 Daniel Saukel
+ *
+ * This library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNULesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.api.dungeon;
+
+import de.erethon.dungeonsxl.api.DungeonsAPI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * The registry of all {@link GameRule}s.
+ * <p>
+ * The native rules are registered when {@link GameRule} is initialized. Rules added by {@link de.erethon.dungeonsxl.api.DungeonModule}s must be
+ * {@link #register(GameRule) registered} before the registry is {@link #freeze() frozen} when the server has finished starting. Rules that are not registered
+ * still work, but their states are not stored in the fast slots of a {@link GameRuleContainer}.
+ *
+ * @author Daniel Saukel
+ */
+public class GameRuleRegistry implements Iterable<GameRule<?>> {
+
+    private Map<String, GameRule<?>> rulesByKey = new HashMap<>();
+    private List<GameRule<?>> rulesByOrdinal = new ArrayList<>();
+    private boolean frozen;
+
+    GameRuleRegistry() {
+    }
+
+    /**
+     * Registers the game rule, assigns its {@link GameRule#getOrdinal() ordinal} and adds its default value to the {@link GameRuleContainer#DEFAULT_VALUES}.
+     *
+     * @param rule the game rule to register
+     * @throws IllegalStateException    if the registry is already frozen
+     * @throws IllegalArgumentException if the rule is already registered or if another rule is registered under the same key
+     */
+    public void register(GameRule<?> rule) {
+        add(rule);
+        GameRuleContainer.DEFAULT_VALUES.setState((GameRule) rule, rule.getDefaultValue());
+    }
+
+    /**
+     * Like {@link #register(GameRule)}, but without touching the default values. This is used for the native rules during the initialization of
+     * {@link GameRule} because the default values are initialized from the registry afterwards.
+     *
+     * @param rule the game rule to register
+     */
+    void add(GameRule<?> rule) {
+        if (frozen) {
+            throw new IllegalStateException("Game rule registry is frozen; " + rule.getKey() + " cannot be registered anymore");
+        }
+        if (rule.getOrdinal() != -1 || rulesByKey.containsKey(rule.getKey())) {
+            throw new IllegalArgumentException("A game rule with the key " + rule.getKey() + " is already registered");
+        }
+        rule.setOrdinal(rulesByOrdinal.size());
+        rulesByOrdinal.add(rule);
+        rulesByKey.put(rule.getKey(), rule);
+    }
+
+    /**
+     * Returns the game rule with the given configuration key or null if none is registered.
+     *
+     * @param key the configuration key
+     * @return the game rule with the given configuration key or null if none is registered
+     */
+    public GameRule<?> get(String key) {
+        return rulesByKey.get(key);
+    }
+
+    /**
+     * Returns the game rule with the given ordinal or null if none is registered.
+     *
+     * @param ordinal the ordinal
+     * @return the game rule with the given ordinal or null if none is registered
+     */
+    public GameRule<?> get(int ordinal) {
+        return ordinal >= 0 && ordinal < rulesByOrdinal.size() ? rulesByOrdinal.get(ordinal) : null;
+    }
+
+    /**
+     * Returns the amount of registered game rules.
+     *
+     * @return the amount of registered game rules
+     */
+    public int size() {
+        return rulesByOrdinal.size();
+    }
+
+    /**
+     * Returns if the registry is frozen.
+     *
+     * @return if the registry is frozen
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Prevents further game rules from being registered.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Reads the states of all registered game rules whose key is present in the config into the container.
+     * <p>
+     * The rules are looked up by the keys of the config instead of asking every rule for its key, so the cost depends on the size of the config, not on the
+     * amount of registered rules. Config implementations should use this instead of iterating over {@link GameRule#VALUES}.
+     *
+     * @param api       the API instance
+     * @param container the game rule container whose states are to be set
+     * @param config    the config to fetch the values from
+     */
+    public void fromConfig(DungeonsAPI api, GameRuleContainer container, ConfigurationSection config) {
+        for (String key : config.getKeys(true)) {
+            GameRule<?> rule = rulesByKey.get(key);
+            if (rule != null) {
+                rule.fromConfig(api, container, config);
+            }
+        }
+    }
+
+    /**
+     * Returns an Iterator of the registered game rules in the order of their ordinals.
+     *
+     * @return an Iterator of the registered game rules in the order of their ordinals
+     */
+    @Override
+    public Iterator<GameRule<?>> iterator() {
+        return Collections.unmodifiableList(rulesByOrdinal).iterator();
+    }
+
+}
@@ -15,6 +15,7 @@
 package de.erethon.dungeonsxl.api.event.world;
 
 import de.erethon.dungeonsxl.api.world.EditWorld;
+import java.util.Set;
 import org.bukkit.event.Cancellable;
 import org.bukkit.event.HandlerList;
 
@@ -28,8 +29,30 @@ public class EditWorldSaveEvent extends EditWorldEvent implements Cancellable {
     private static final HandlerList handlers = new HandlerList();
     private boolean cancelled;
 
+    private Set<String> changedFiles;
+
+    /**
+     * @param editWorld the edit world
+     * @deprecated the changed files are unknown; use {@link #EditWorldSaveEvent(EditWorld, Set)}
+     */
+    @Deprecated
     public EditWorldSaveEvent(EditWorld editWorld) {
+        this(editWorld, null);
+    }
+
+    public EditWorldSaveEvent(EditWorld editWorld, Set<String> changedFiles) {
         super(editWorld);
+        this.changedFiles = changedFiles;
+    }
+
+    /**
+     * Returns the paths of the files that are going to be written back to the resource, relative to the world folder and separated by slashes, like e.g.
+     * "region/r.0.-1.mca".
+     *
+     * @return the paths of the changed files or null if they are unknown and the whole world might have changed
+     */
+    public Set<String> getChangedFiles() {
+        return changedFiles;
     }
 
     @Override
@@ -53,7 +76,7 @@ public class EditWorldSaveEvent extends EditWorldEvent implements Cancellable {
 
     @Override
     public String toString() {
-        return getClass().getSimpleName() + "{instance=" + instance + "}";
+        return getClass().getSimpleName() + "{instance=" + instance + "; changedFiles=" + changedFiles + "}";
     }
 
 }
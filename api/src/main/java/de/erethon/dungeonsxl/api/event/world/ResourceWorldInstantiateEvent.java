@@ -29,10 +29,16 @@ public class ResourceWorldInstantiateEvent extends ResourceWorldEvent implements
     private boolean cancelled;
 
     private String instanceWorldName;
+    private boolean editInstance;
 
     public ResourceWorldInstantiateEvent(ResourceWorld resource, String instanceWorldName) {
+        this(resource, instanceWorldName, instanceWorldName.startsWith("DXL_Edit_"));
+    }
+
+    public ResourceWorldInstantiateEvent(ResourceWorld resource, String instanceWorldName, boolean editInstance) {
         super(resource);
         this.instanceWorldName = instanceWorldName;
+        this.editInstance = editInstance;
     }
 
     /**
@@ -41,7 +47,7 @@ public class ResourceWorldInstantiateEvent extends ResourceWorldEvent implements
      * @return if the loaded instance will be an edit world
      */
     public boolean isEditInstance() {
-        return instanceWorldName.startsWith("DXL_Edit_");
+        return editInstance;
     }
 
     /**
@@ -76,7 +82,7 @@ public class ResourceWorldInstantiateEvent extends ResourceWorldEvent implements
 
     @Override
     public String toString() {
-        return getClass().getSimpleName() + "{resource=" + resource + "; instanceWorldName=" + instanceWorldName + "}";
+        return getClass().getSimpleName() + "{resource=" + resource + "; instanceWorldName=" + instanceWorldName + "; editInstance=" + editInstance + "}";
     }
 
 }
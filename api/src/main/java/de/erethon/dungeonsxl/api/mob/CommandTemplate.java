@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2014-2021 Daniel Saukel
+ *
+ * This library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNULesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.api.mob;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bukkit.Location;
+
+/**
+ * A spawn command of an {@link ExternalMobProvider} that is compiled into literal segments and placeholders.
+ * <p>
+ * Supports the same placeholders as {@link ExternalMobProvider#getCommand(String, String, double, double, double)}. Rendering appends the segments into a
+ * reused buffer, so the main thread does not have to search the raw command again for each spawned mob.
+ *
+ * @author Daniel Saukel
+ */
+public class CommandTemplate {
+
+    private static final Map<String, CommandTemplate> CACHE = new ConcurrentHashMap<>();
+
+    private enum Placeholder {
+
+        MOB("%mob%"),
+        WORLD("%world%"),
+        X("%x%"),
+        Y("%y%"),
+        Z("%z%"),
+        BLOCK_X("%block_x%"),
+        BLOCK_Y("%block_y%"),
+        BLOCK_Z("%block_z%");
+
+        private String token;
+
+        Placeholder(String token) {
+            this.token = token;
+        }
+
+    }
+
+    /**
+     * Literal segments are Strings, the others are placeholders.
+     */
+    private Object[] segments;
+    private StringBuilder buffer;
+
+    private CommandTemplate(Object[] segments, int length) {
+        this.segments = segments;
+        buffer = new StringBuilder(length + 64);
+    }
+
+    /**
+     * Returns the compiled template of the raw command. Templates are cached by their raw command.
+     *
+     * @param rawCommand the raw command
+     * @return the compiled template
+     */
+    public static CommandTemplate of(String rawCommand) {
+        return CACHE.computeIfAbsent(rawCommand, CommandTemplate::compile);
+    }
+
+    /**
+     * Removes all cached templates.
+     * <p>
+     * This is done when the plugin data is reloaded so that the templates of commands that are not used anymore do not stay in memory.
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * Compiles the raw command without caching the result.
+     *
+     * @param rawCommand the raw command
+     * @return the compiled template
+     */
+    public static CommandTemplate compile(String rawCommand) {
+        List<Object> segments = new ArrayList<>();
+        int literalStart = 0;
+        int i = rawCommand.indexOf('%');
+        while (i != -1) {
+            Placeholder match = null;
+            for (Placeholder placeholder : Placeholder.values()) {
+                if (rawCommand.startsWith(placeholder.token, i)) {
+                    match = placeholder;
+                    break;
+                }
+            }
+            if (match == null) {
+                i = rawCommand.indexOf('%', i + 1);
+                continue;
+            }
+            if (i > literalStart) {
+                segments.add(rawCommand.substring(literalStart, i));
+            }
+            segments.add(match);
+            literalStart = i + match.token.length();
+            i = rawCommand.indexOf('%', literalStart);
+        }
+        if (literalStart < rawCommand.length()) {
+            segments.add(rawCommand.substring(literalStart));
+        }
+        return new CommandTemplate(segments.toArray(), rawCommand.length());
+    }
+
+    /**
+     * Renders the command.
+     * <p>
+     * The buffer of the template is reused, so rendering is synchronized.
+     *
+     * @param mob   the mob identifier
+     * @param world the name of the world
+     * @param x     the x coordinate
+     * @param y     the y coordinate
+     * @param z     the z coordinate
+     * @return the command with replaced variables
+     */
+    public synchronized String render(String mob, String world, double x, double y, double z) {
+        StringBuilder builder = buffer;
+        builder.setLength(0);
+        for (Object segment : segments) {
+            if (segment instanceof String) {
+                builder.append((String) segment);
+                continue;
+            }
+            switch ((Placeholder) segment) {
+                case MOB:
+                    builder.append(mob);
+                    break;
+                case WORLD:
+                    builder.append(world);
+                    break;
+                case X:
+                    builder.append(x);
+                    break;
+                case Y:
+                    builder.append(y);
+                    break;
+                case Z:
+                    builder.append(z);
+                    break;
+                case BLOCK_X:
+                    builder.append(Location.locToBlock(x));
+                    break;
+                case BLOCK_Y:
+                    builder.append(Location.locToBlock(y));
+                    break;
+                case BLOCK_Z:
+                    builder.append(Location.locToBlock(z));
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+}
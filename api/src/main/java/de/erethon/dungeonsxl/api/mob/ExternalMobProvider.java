@@ -44,6 +44,7 @@ public interface ExternalMobProvider {
      * Returns the console spawn command of the provider with values replaced to spawn the mob represented by the given String.
      * <p>
      * The default implementation uses %mob%, %world%, %x%, %y% and %z% as placeholders and alternatively %block_x% etc. if values without decimals are needed.
+     * It renders the precompiled {@link #getCommandTemplate() template}.
      * <p>
      * This method is used in the default implementation of {@link #summon(String, org.bukkit.Location)}.
      *
@@ -55,22 +56,46 @@ public interface ExternalMobProvider {
      * @return the command with replaced variables
      */
     default String getCommand(String mob, String world, double x, double y, double z) {
-        return getRawCommand().replace("%mob%", mob).replace("%world%", world)
-                .replace("%x%", String.valueOf(x)).replace("%y%", String.valueOf(y)).replace("%z%", String.valueOf(z))
-                .replace("%block_x%", String.valueOf(Location.locToBlock(x)))
-                .replace("%block_y%", String.valueOf(Location.locToBlock(y)))
-                .replace("%block_z%", String.valueOf(Location.locToBlock(z)));
+        return getCommandTemplate().render(mob, world, x, y, z);
+    }
+
+    /**
+     * Returns the compiled {@link #getRawCommand() raw command}.
+     * <p>
+     * The default implementation looks the template up in a cache. Providers may override this to return a template they keep in a field.
+     *
+     * @return the compiled raw command
+     */
+    default CommandTemplate getCommandTemplate() {
+        return CommandTemplate.of(getRawCommand());
+    }
+
+    /**
+     * Spawns the mob through the API of the provider instead of dispatching a console command.
+     * <p>
+     * The default implementation does nothing and returns false.
+     *
+     * @param mob      the mob identifier
+     * @param location the location where the mob will be spawned
+     * @return true if the provider handled the spawn, false if the spawn command shall be dispatched instead
+     */
+    default boolean summonDirectly(String mob, Location location) {
+        return false;
     }
 
     /**
      * Summons the mob.
      * <p>
-     * The default implementation requires {@link #getCommand(String, String, double, double, double)} to be implemented.
+     * The default implementation tries {@link #summonDirectly(String, Location)} first and dispatches the command returned by
+     * {@link #getCommand(String, String, double, double, double)} if the provider does not support spawning mobs directly.
      *
      * @param mob      the mob identifier
      * @param location the location where the mob will be spawned
      */
     default void summon(String mob, Location location) {
+        if (summonDirectly(mob, location)) {
+            return;
+        }
         Bukkit.getServer().dispatchCommand(Bukkit.getConsoleSender(), getCommand(mob, location.getWorld().getName(), location.getX(), location.getY(), location.getZ()));
     }
 
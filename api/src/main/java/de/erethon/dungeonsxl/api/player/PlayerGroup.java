@@ -123,7 +123,7 @@ public interface PlayerGroup {
      * @param player the player to add
      */
     default void removeMember(Player player) {
-        addMember(player, true);
+        removeMember(player, true);
     }
 
     /**
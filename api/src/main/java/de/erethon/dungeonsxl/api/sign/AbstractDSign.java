@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.Set;
 import org.bukkit.ChatColor;
 import org.bukkit.block.Sign;
+import org.bukkit.entity.Player;
 
 /**
  * Skeletal implementation of {@link DungeonSign}.
@@ -42,6 +43,14 @@ public abstract class AbstractDSign implements DungeonSign {
     private InstanceWorld instance;
     String worldName;
     private Set<Trigger> triggers = new HashSet<>();
+    /**
+     * The amount of triggers that report their state changes and are not triggered.
+     */
+    private int untriggered;
+    /**
+     * The amount of triggers that do not report their state changes.
+     */
+    private int legacyTriggers;
     private boolean initialized;
     private boolean erroneous;
 
@@ -80,12 +89,58 @@ public abstract class AbstractDSign implements DungeonSign {
 
     @Override
     public void addTrigger(Trigger trigger) {
-        triggers.add(trigger);
+        if (!triggers.add(trigger)) {
+            return;
+        }
+        if (!trigger.addListener(this)) {
+            legacyTriggers++;
+        } else if (!trigger.isTriggered()) {
+            untriggered++;
+        }
     }
 
     @Override
     public void removeTrigger(Trigger trigger) {
-        triggers.remove(trigger);
+        if (!triggers.remove(trigger)) {
+            return;
+        }
+        if (!trigger.removeListener(this)) {
+            legacyTriggers--;
+        } else if (!trigger.isTriggered()) {
+            untriggered--;
+        }
+    }
+
+    @Override
+    public void onTriggerChanged(Trigger trigger, boolean triggered) {
+        untriggered += triggered ? -1 : 1;
+        if (!triggered || untriggered != 0) {
+            return;
+        }
+        if (legacyTriggers != 0) {
+            // The counter does not know the state of triggers that do not report changes
+            updateTriggers(trigger);
+            return;
+        }
+        triggerSafely(trigger.getPlayer());
+    }
+
+    /**
+     * Triggers the sign if it is not erroneous and marks it as erroneous if triggering it throws an exception.
+     *
+     * @param player the player who triggered the sign or null if no player triggered it
+     */
+    void triggerSafely(Player player) {
+        if (isErroneous()) {
+            return;
+        }
+        try {
+            trigger(player);
+        } catch (Exception exception) {
+            markAsErroneous("An error occurred while triggering a sign of the type " + getName()
+                    + ". This is not a user error. Please report the following stacktrace to the developer of the plugin:");
+            exception.printStackTrace();
+        }
     }
 
     @Override
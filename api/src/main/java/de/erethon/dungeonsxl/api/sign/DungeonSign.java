@@ -194,6 +194,21 @@ public interface DungeonSign {
         }
     }
 
+    /**
+     * Called by triggers that report their state changes when {@link Trigger#isTriggered()} changes.
+     * <p>
+     * The default implementation calls {@link #updateTriggers(Trigger)} when the trigger became triggered. {@link AbstractDSign} instead counts the
+     * triggers that are not triggered yet sothat a change costs constant time.
+     *
+     * @param trigger   the trigger
+     * @param triggered the new state of the trigger
+     */
+    default void onTriggerChanged(Trigger trigger, boolean triggered) {
+        if (triggered) {
+            updateTriggers(trigger);
+        }
+    }
+
     /**
      * Sets the sign to air if it is not erroneous and if its type requires this.
      * <p>
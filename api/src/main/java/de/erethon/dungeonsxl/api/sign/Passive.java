@@ -40,6 +40,16 @@ public abstract class Passive extends AbstractDSign {
     public final void updateTriggers(Trigger lastFired) {
     }
 
+    /**
+     * Does nothing.
+     *
+     * @param trigger   unused
+     * @param triggered unused
+     */
+    @Override
+    public final void onTriggerChanged(Trigger trigger, boolean triggered) {
+    }
+
     /**
      * Does nothing.
      *
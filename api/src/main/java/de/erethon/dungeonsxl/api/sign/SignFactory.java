@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014-2021 Daniel Saukel
+ *
+ * This library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNULesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.api.sign;
+
+import de.erethon.dungeonsxl.api.DungeonsAPI;
+import de.erethon.dungeonsxl.api.world.InstanceWorld;
+import org.bukkit.block.Sign;
+
+/**
+ * Creates dungeon signs of a specific type.
+ * <p>
+ * The constructor of a sign class that has the same parameters as the one of {@link AbstractDSign} can be used as a factory, like e.g.
+ * <code>MySign::new</code>.
+ *
+ * @author Daniel Saukel
+ */
+@FunctionalInterface
+public interface SignFactory {
+
+    /**
+     * Creates a dungeon sign.
+     *
+     * @param api      the API instance
+     * @param sign     the sign block
+     * @param lines    the lines of the sign
+     * @param instance the instance the sign is in
+     * @return the created sign
+     */
+    DungeonSign create(DungeonsAPI api, Sign sign, String[] lines, InstanceWorld instance);
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2014-2021 Daniel Saukel
+ *
+ * This library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNULesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.api.sign;
+
+import de.erethon.dungeonsxl.api.DungeonsAPI;
+import de.erethon.dungeonsxl.api.world.InstanceWorld;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.bukkit.block.Sign;
+
+/**
+ * The registry of all {@link DungeonSign} types.
+ * <p>
+ * Every type is resolved into a {@link SignFactory} once when it is registered, so that creating a sign is as cheap as calling its constructor directly.
+ * Types added by {@link de.erethon.dungeonsxl.api.DungeonModule}s are registered in
+ * {@link de.erethon.dungeonsxl.api.DungeonModule#initializeSignRegistry(SignRegistry)}.
+ *
+ * @author Daniel Saukel
+ */
+public class SignRegistry {
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, DungeonsAPI.class, Sign.class, String[].class, InstanceWorld.class);
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(DungeonSign.class, DungeonsAPI.class, Sign.class, String[].class, InstanceWorld.class);
+
+    private Map<String, Class<? extends DungeonSign>> typesByName = new HashMap<>();
+    private Map<String, SignFactory> factoriesByName = new HashMap<>();
+    private Map<String, SignFactory> factoriesByClassName = new HashMap<>();
+
+    /**
+     * Registers the sign type and creates a factory from its constructor.
+     * <p>
+     * The constructor must have the same parameters as the one of {@link AbstractDSign} and must be public.
+     *
+     * @param name the name of the sign type, as written on the first line of the sign without brackets; case-insensitive
+     * @param type the sign class
+     * @throws IllegalArgumentException if the name is already taken or if the class does not have a suitable constructor
+     */
+    public void register(String name, Class<? extends DungeonSign> type) {
+        register(name, type, MethodHandles.lookup());
+    }
+
+    /**
+     * Registers the sign type and creates a factory from its constructor using the given lookup.
+     * <p>
+     * Use this to register classes that are not visible to DungeonsXL or whose constructor is not public by passing
+     * <code>MethodHandles.lookup()</code>.
+     *
+     * @param name   the name of the sign type; case-insensitive
+     * @param type   the sign class
+     * @param lookup a lookup that has access to the constructor
+     * @throws IllegalArgumentException if the name is already taken or if the class does not have a suitable constructor
+     */
+    public void register(String name, Class<? extends DungeonSign> type, MethodHandles.Lookup lookup) {
+        register(name, type, createFactory(type, lookup));
+    }
+
+    /**
+     * Registers the sign type with an explicit factory, like e.g. a constructor reference.
+     *
+     * @param name    the name of the sign type; case-insensitive
+     * @param type    the sign class
+     * @param factory the factory
+     * @throws IllegalArgumentException if the name is already taken
+     */
+    public void register(String name, Class<? extends DungeonSign> type, SignFactory factory) {
+        String key = name.toUpperCase();
+        if (typesByName.containsKey(key)) {
+            throw new IllegalArgumentException("A sign type with the name " + name + " is already registered");
+        }
+        typesByName.put(key, type);
+        factoriesByName.put(key, factory);
+        factoriesByClassName.putIfAbsent(type.getName(), factory);
+    }
+
+    /**
+     * Returns the sign class registered under the name or null if none is.
+     *
+     * @param name the name; case-insensitive
+     * @return the sign class registered under the name or null if none is
+     */
+    public Class<? extends DungeonSign> getType(String name) {
+        return typesByName.get(name.toUpperCase());
+    }
+
+    /**
+     * Returns the factory registered under the name or null if none is.
+     *
+     * @param name the name; case-insensitive
+     * @return the factory registered under the name or null if none is
+     */
+    public SignFactory getFactory(String name) {
+        return factoriesByName.get(name.toUpperCase());
+    }
+
+    /**
+     * Returns the factory of the sign class or null if it is not registered.
+     *
+     * @param type the sign class
+     * @return the factory of the sign class or null if it is not registered
+     */
+    public SignFactory getFactory(Class<? extends DungeonSign> type) {
+        return factoriesByClassName.get(type.getName());
+    }
+
+    /**
+     * Returns the factory of the sign class with the given {@link Class#getName() binary name} or null if it is not registered.
+     *
+     * @param className the binary name of the sign class
+     * @return the factory of the sign class or null if it is not registered
+     */
+    public SignFactory getFactoryByClassName(String className) {
+        return factoriesByClassName.get(className);
+    }
+
+    /**
+     * Returns the names of all registered sign types in upper case.
+     *
+     * @return the names of all registered sign types
+     */
+    public Collection<String> getNames() {
+        return Collections.unmodifiableCollection(typesByName.keySet());
+    }
+
+    /**
+     * Creates a sign of the type registered under the name.
+     *
+     * @param name     the name of the sign type; case-insensitive
+     * @param api      the API instance
+     * @param sign     the sign block
+     * @param lines    the lines of the sign
+     * @param instance the instance the sign is in
+     * @return the created sign or null if no type is registered under the name
+     */
+    public DungeonSign create(String name, DungeonsAPI api, Sign sign, String[] lines, InstanceWorld instance) {
+        SignFactory factory = getFactory(name);
+        return factory != null ? factory.create(api, sign, lines, instance) : null;
+    }
+
+    private static SignFactory createFactory(Class<? extends DungeonSign> type, MethodHandles.Lookup lookup) {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException(type.getName() + " is abstract");
+        }
+        MethodHandle constructor;
+        try {
+            constructor = lookup.findConstructor(type, CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException exception) {
+            throw new IllegalArgumentException(type.getName() + " does not have an accessible constructor with the parameters " + CONSTRUCTOR_TYPE, exception);
+        }
+
+        // The generated class resolves the sign class by name, so it must be visible to the class loader of the lookup
+        if (isVisible(type, lookup.lookupClass().getClassLoader())) {
+            CallSite site = null;
+            try {
+                site = LambdaMetafactory.metafactory(lookup, "create", MethodType.methodType(SignFactory.class), FACTORY_TYPE, constructor,
+                        constructor.type());
+            } catch (LambdaConversionException exception) {
+                // The constructor cannot be linked into a lambda, e.g. because it is a caller sensitive or signature polymorphic method; fall through
+            }
+            if (site != null) {
+                try {
+                    return (SignFactory) site.getTarget().invoke();
+                } catch (RuntimeException | Error exception) {
+                    throw exception;
+                } catch (Throwable exception) {
+                    throw new IllegalStateException(exception);
+                }
+            }
+        }
+
+        MethodHandle handle = constructor.asType(FACTORY_TYPE);
+        return (api, sign, lines, instance) -> {
+            try {
+                return (DungeonSign) handle.invokeExact(api, sign, lines, instance);
+            } catch (RuntimeException | Error exception) {
+                throw exception;
+            } catch (Throwable exception) {
+                throw new IllegalStateException(exception);
+            }
+        };
+    }
+
+    private static boolean isVisible(Class<?> type, ClassLoader loader) {
+        try {
+            return Class.forName(type.getName(), false, loader) == type;
+        } catch (ClassNotFoundException | LinkageError exception) {
+            return false;
+        }
+    }
+
+}
@@ -15,10 +15,12 @@
 package de.erethon.dungeonsxl.api.sign;
 
 import de.erethon.dungeonsxl.api.DungeonsAPI;
+import de.erethon.dungeonsxl.api.TimerWheel;
 import de.erethon.dungeonsxl.api.world.InstanceWorld;
 import org.bukkit.Bukkit;
 import org.bukkit.block.Sign;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitTask;
 
 /**
@@ -37,6 +39,7 @@ public abstract class Windup extends Deactivatable {
     protected int n;
 
     private Runnable runnable;
+    private TimerWheel.Timer timer;
     private BukkitTask task;
 
     protected Windup(DungeonsAPI api, Sign sign, String[] lines, InstanceWorld instance) {
@@ -82,17 +85,59 @@ public abstract class Windup extends Deactivatable {
     /**
      * Returns the underlying task if it has started yet or null if not.
      *
+     * @deprecated the task is not run by the Bukkit scheduler anymore; the returned task only reflects and cancels the {@link #getTimer() timer}
      * @return the underlying task if it has started yet or null if not
      */
+    @Deprecated
     public BukkitTask getTask() {
         return task;
     }
 
+    /**
+     * Returns the underlying timer if it has started yet or null if not.
+     *
+     * @return the underlying timer if it has started yet or null if not
+     */
+    public TimerWheel.Timer getTimer() {
+        return timer;
+    }
+
     /**
      * Starts the runnable.
+     * <p>
+     * The task is scheduled in the {@link DungeonsAPI#getTimerWheel() timer wheel} and grouped by the instance, so that it is cancelled when the
+     * instance is unloaded.
      */
     public void startTask() {
-        task = Bukkit.getScheduler().runTaskTimer(api, runnable, getDelayTicks(), getIntervalTicks());
+        InstanceWorld instance = getGameWorld() != null ? getGameWorld() : getEditWorld();
+        TimerWheel.Timer timer = api.getTimerWheel().schedule(runnable, instance, getDelayTicks(), Math.max(1L, getIntervalTicks()));
+        this.timer = timer;
+        task = new BukkitTask() {
+            @Override
+            public int getTaskId() {
+                return -1;
+            }
+
+            @Override
+            public Plugin getOwner() {
+                return api;
+            }
+
+            @Override
+            public boolean isSync() {
+                return true;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return timer.isCancelled();
+            }
+
+            @Override
+            public void cancel() {
+                timer.cancel();
+            }
+        };
     }
 
     /**
@@ -143,12 +188,12 @@ public abstract class Windup extends Deactivatable {
     }
 
     /**
-     * Cancels the {@link #getTask() task}.
+     * Cancels the {@link #getTimer() timer}.
      */
     public void deactivate() {
         active = false;
-        if (getTask() != null) {
-            getTask().cancel();
+        if (timer != null) {
+            timer.cancel();
         }
     }
 
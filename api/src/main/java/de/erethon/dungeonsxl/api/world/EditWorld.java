@@ -34,6 +34,8 @@ public interface EditWorld extends InstanceWorld {
 
     /**
      * Saves the sign data and overrides the resource with the changes.
+     * <p>
+     * Only the files that changed since the last save are written back to the resource.
      */
     void save();
 
@@ -145,6 +145,8 @@ public interface InstanceWorld {
 
     /**
      * Deletes this instance.
+     * <p>
+     * The world is unloaded immediately, while the folder may be deleted asynchronously.
      */
     void delete();
 
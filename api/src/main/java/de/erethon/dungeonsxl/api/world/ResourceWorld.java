@@ -99,6 +99,9 @@ public interface ResourceWorld {
 
     /**
      * Creates a backup of the resource.
+     * <p>
+     * Backups are created asynchronously and incrementally: Files that did not change since the last backup are not stored again. Old backups are pruned
+     * automatically.
      */
     void backup();
 
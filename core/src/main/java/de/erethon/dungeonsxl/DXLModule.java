@@ -17,9 +17,27 @@
 package de.erethon.dungeonsxl;
 
 import de.erethon.dungeonsxl.api.DungeonModule;
+import de.erethon.dungeonsxl.api.sign.DungeonSign;
+import de.erethon.dungeonsxl.api.sign.SignRegistry;
+import java.util.Map.Entry;
 
 /**
  * @author Daniel Saukel
  */
 public class DXLModule implements DungeonModule {
+
+    /**
+     * Registers the built-in sign types, i.e. the ones in {@link DungeonsXL#LEGACY_SIGNS}, so that they are created through factories instead of reflection.
+     *
+     * @param signRegistry the sign registry
+     */
+    @Override
+    public void initializeSignRegistry(SignRegistry signRegistry) {
+        for (Entry<String, Class<? extends DungeonSign>> entry : DungeonsXL.LEGACY_SIGNS.entrySet()) {
+            if (signRegistry.getType(entry.getKey()) == null) {
+                signRegistry.register(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
 }
@@ -18,17 +18,36 @@ package de.erethon.dungeonsxl;
 
 import de.erethon.dungeonsxl.api.DungeonModule;
 import de.erethon.dungeonsxl.api.DungeonsAPI;
+import de.erethon.dungeonsxl.api.TimerWheel;
 import de.erethon.dungeonsxl.api.dungeon.Dungeon;
 import de.erethon.dungeonsxl.api.dungeon.Game;
+import de.erethon.dungeonsxl.api.dungeon.GameRule;
 import de.erethon.dungeonsxl.api.mob.DungeonMob;
 import de.erethon.dungeonsxl.api.player.GroupAdapter;
 import de.erethon.dungeonsxl.api.player.PlayerCache;
 import de.erethon.dungeonsxl.api.player.PlayerGroup;
 import de.erethon.dungeonsxl.api.sign.DungeonSign;
+import de.erethon.dungeonsxl.api.sign.SignRegistry;
 import de.erethon.dungeonsxl.api.world.EditWorld;
 import de.erethon.dungeonsxl.api.world.GameWorld;
 import de.erethon.dungeonsxl.api.world.InstanceWorld;
+import de.erethon.dungeonsxl.dungeon.DungeonListener;
+import de.erethon.dungeonsxl.mob.CitizensListener;
+import de.erethon.dungeonsxl.mob.DNPCRegistry;
+import de.erethon.dungeonsxl.mob.MobListener;
+import de.erethon.dungeonsxl.mob.SpawnScheduler;
+import de.erethon.dungeonsxl.player.GroupListener;
 import de.erethon.dungeonsxl.util.commons.misc.Registry;
+import de.erethon.dungeonsxl.world.BackupStore;
+import de.erethon.dungeonsxl.world.CrashRecovery;
+import de.erethon.dungeonsxl.world.DirtyRegionTracker;
+import de.erethon.dungeonsxl.world.EditWorldListener;
+import de.erethon.dungeonsxl.world.FolderDeleter;
+import de.erethon.dungeonsxl.world.InstancePool;
+import de.erethon.dungeonsxl.world.InstanceScheduler;
+import de.erethon.dungeonsxl.world.SignTableCache;
+import de.erethon.dungeonsxl.world.WorldCopier;
+import de.erethon.dungeonsxl.world.WorldListener;
 import org.bukkit.Bukkit;
 import org.bukkit.Color;
 import org.bukkit.NamespacedKey;
@@ -42,11 +61,14 @@ import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataType;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 
@@ -60,7 +82,13 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
 
     /* Constants */
     public static final String LATEST_IXL = "1.0.2";
-    public static final String[] EXCLUDED_FILES = {"config.yml", "uid.dat", "DXLData.data", "data"};
+    public static final String[] EXCLUDED_FILES = {"config.yml", "uid.dat", "DXLData.data", "DXLSigns.table", "DXLSigns.table.tmp", "DXLSave.tmp", "data"};
+    public static final long DELETION_TIMEOUT = 60L;
+    public static final int BACKUP_KEEP_LAST = 10;
+    public static final long BACKUP_MAX_AGE = TimeUnit.DAYS.toMillis(7);
+    public static final long SPAWN_BUDGET = TimeUnit.MILLISECONDS.toNanos(5);
+    public static final int NPC_POOL_SIZE = 16;
+    public static final String COPY_MODE_KEY = "instanceCopyMode";
 
     /* Folders of internal features */
     public static final File ANNOUNCERS = new File(SCRIPTS, "announcers");
@@ -68,14 +96,37 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
     public static final File COMMANDS = new File(SCRIPTS, "commands");
 
     /* Legacy */
+    /**
+     * @deprecated sign types are created through the {@link #getSignRegistry() sign registry}; the types in this map are registered there when
+     * {@link DXLModule} is registered, later entries when a lookup in the registry misses
+     */
+    @Deprecated
     public static final Map<String, Class<? extends DungeonSign>> LEGACY_SIGNS = new HashMap<>();
 
     /* Caches & registries */
     private Set<DungeonModule> modules = new HashSet<>();
+    private SignRegistry signRegistry = new LegacySignRegistry(this);
     private Collection<GroupAdapter> groupAdapters = new HashSet<>();
     private PlayerCache playerCache;
     private Collection<Game> gameCache;
+    private Map<UUID, Game> gamesByPlayer = new HashMap<>();
+    private Map<UUID, Game> gamesByWorld = new HashMap<>();
+    private Map<UUID, DungeonMob> mobsByEntity = new HashMap<>();
+    private Map<UUID, InstanceWorld> instancesByWorld = new HashMap<>();
+    private WorldCopier worldCopier;
+    private FolderDeleter folderDeleter;
+    private CrashRecovery crashRecovery;
+    private BackupStore backupStore;
+    private DirtyRegionTracker dirtyRegionTracker = new DirtyRegionTracker();
+    private TimerWheel timerWheel = new TimerWheel();
+    private SignTableCache signTableCache = new SignTableCache(this);
+    private SpawnScheduler spawnScheduler = new SpawnScheduler(this, SPAWN_BUDGET);
+    private DNPCRegistry dNPCRegistry;
+    private InstancePool instancePool;
+    private InstanceScheduler instanceScheduler;
     private Registry<String, PlayerGroup> playerGroupCache;
+    private Map<UUID, PlayerGroup> groupsByMember = new HashMap<>();
+    private Set<UUID> ungrouped = new HashSet<>();
 
     /* Global state variables */
     private boolean loaded, loadingWorld;
@@ -93,7 +144,27 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
         instance = this;
         initFolders();
         registerModule(new DXLModule());
+        manager.registerEvents(new DungeonListener(this), this);
+        manager.registerEvents(new WorldListener(this), this);
+        manager.registerEvents(new GroupListener(this), this);
+        manager.registerEvents(new MobListener(this), this);
+        manager.registerEvents(new EditWorldListener(dirtyRegionTracker), this);
+        if (manager.isPluginEnabled("Citizens")) {
+            dNPCRegistry = new DNPCRegistry(NPC_POOL_SIZE);
+            manager.registerEvents(new CitizensListener(dNPCRegistry), this);
+        }
+        folderDeleter = new FolderDeleter(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        backupStore = new BackupStore(BACKUPS, BACKUP_KEEP_LAST, BACKUP_MAX_AGE);
         checkState();
+        worldCopier = new WorldCopier(this, Math.max(2, Runtime.getRuntime().availableProcessors() / 2), readCopyMode());
+        instancePool = new InstancePool(this, getConfig().getInt(InstancePool.CONFIG_KEY, 0), getConfig().getBoolean(InstancePool.PRELOAD_KEY, false));
+        instancePool.start();
+        instanceScheduler = new InstanceScheduler(this, 2, 1);
+        instanceScheduler.start();
+        timerWheel.start(this);
+        spawnScheduler.start();
+        // Modules of other plugins are registered while they are enabled, i.e. before the first tick
+        getServer().getScheduler().runTask(this, GameRule.REGISTRY::freeze);
         loaded = true;
     }
 
@@ -104,6 +175,23 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
         }
         loaded = false;
         deleteAllInstances();
+        timerWheel.stop();
+        spawnScheduler.stop();
+        if (dNPCRegistry != null) {
+            dNPCRegistry.getPool().clear();
+        }
+        if (!worldCopier.shutdown(DELETION_TIMEOUT, TimeUnit.SECONDS)) {
+            getLogger().log(Level.WARNING, "World copies could not be stopped in time.");
+        }
+        if (!crashRecovery.shutdown(DELETION_TIMEOUT, TimeUnit.SECONDS)) {
+            getLogger().log(Level.WARNING, "Crash recovery could not be finished in time and is going to be repeated on the next start.");
+        }
+        if (!backupStore.shutdown(DELETION_TIMEOUT, TimeUnit.SECONDS)) {
+            getLogger().log(Level.WARNING, "Backups could not be finished in time.");
+        }
+        if (!folderDeleter.shutdown(DELETION_TIMEOUT, TimeUnit.SECONDS)) {
+            getLogger().log(Level.WARNING, folderDeleter.getPending() + " instance folders could not be deleted in time and are going to be deleted on the next start.");
+        }
         HandlerList.unregisterAll(this);
         getServer().getScheduler().cancelTasks(this);
     }
@@ -123,26 +211,19 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
         COMMANDS.mkdir();
     }
 
+    /**
+     * Deletes leftover game instances and starts recovering edit sessions that were not closed properly.
+     * <p>
+     * Both is done in the background; see {@link #getCrashRecovery()}.
+     */
     public void checkState() {
-
-        for (File file : Bukkit.getWorldContainer().listFiles()) {
-            if (!file.getName().startsWith("DXL_") || !file.isDirectory()) {
-                continue;
-            }
-
-            if (file.getName().startsWith("DXL_Edit_")) {
-                for (File mapFile : file.listFiles()) {
-                    if (!mapFile.getName().startsWith(".id_")) {
-                        continue;
-                    }
-
-                    String name = mapFile.getName().substring(4);
-
-                    File resource = new File(DungeonsXL.MAPS, name);
-                    File backup = new File(DungeonsXL.BACKUPS, resource.getName() + "-" + System.currentTimeMillis() + "_crashbackup");
-                }
-            }
+        int leftovers = folderDeleter.reclaim(Bukkit.getWorldContainer());
+        if (leftovers > 0) {
+            log("Deleting " + leftovers + " game instance folders left over from the last run");
         }
+
+        crashRecovery = new CrashRecovery(this, Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        crashRecovery.start(Bukkit.getWorldContainer());
     }
 
     /* Getters and loaders */
@@ -167,9 +248,364 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
         return playerGroupCache;
     }
 
+    /**
+     * Registers the player as a member of the group in the member index that backs {@link #getPlayerGroup(Player)}.
+     * <p>
+     * Group implementations must call this whenever they {@link PlayerGroup#addMember(Player, boolean) add a member}. This is done
+     * automatically for members whose addition is announced through a {@link de.erethon.dungeonsxl.api.event.group.GroupPlayerJoinEvent}.
+     *
+     * @param group  the group
+     * @param member the UUID of the new member
+     */
+    public void indexGroupMember(PlayerGroup group, UUID member) {
+        groupsByMember.put(member, group);
+        ungrouped.remove(member);
+        Game game = group.getGame();
+        if (game != null) {
+            gamesByPlayer.put(member, game);
+        }
+    }
+
+    /**
+     * Removes the player from the member index if they are indexed as a member of the given group.
+     * <p>
+     * Group implementations must call this whenever they {@link PlayerGroup#removeMember(Player, boolean) remove a member}. This is done
+     * automatically for members whose removal is announced through a {@link de.erethon.dungeonsxl.api.event.group.GroupPlayerLeaveEvent} or
+     * {@link de.erethon.dungeonsxl.api.event.group.GroupPlayerKickEvent}.
+     *
+     * @param group  the group
+     * @param member the UUID of the removed member
+     */
+    public void unindexGroupMember(PlayerGroup group, UUID member) {
+        if (groupsByMember.remove(member, group)) {
+            ungrouped.add(member);
+        }
+        Game game = group.getGame();
+        if (game != null) {
+            gamesByPlayer.remove(member, game);
+        }
+    }
+
+    /**
+     * Removes all members of the group from the member index.
+     * <p>
+     * Group implementations must call this when they are {@link PlayerGroup#delete() deleted}. This is done automatically when a
+     * {@link de.erethon.dungeonsxl.api.event.group.GroupDisbandEvent} passes.
+     *
+     * @param group the group
+     */
+    public void unindexGroup(PlayerGroup group) {
+        Game game = group.getGame();
+        for (UUID member : group.getMembers()) {
+            if (groupsByMember.remove(member, group)) {
+                ungrouped.add(member);
+            }
+            if (game != null) {
+                gamesByPlayer.remove(member, game);
+            }
+        }
+    }
+
+    /**
+     * Registers the members of the group as players of the game in the index that backs {@link #getGame(Player)}.
+     * <p>
+     * Game implementations must call this whenever they {@link Game#addGroup(PlayerGroup) add a group}.
+     *
+     * @param game  the game
+     * @param group the group that joined the game
+     */
+    public void indexGameGroup(Game game, PlayerGroup group) {
+        for (UUID member : group.getMembers()) {
+            gamesByPlayer.put(member, game);
+        }
+    }
+
+    /**
+     * Removes the members of the group from the player index of the game.
+     * <p>
+     * Game implementations must call this whenever they {@link Game#removeGroup(PlayerGroup) remove a group}.
+     *
+     * @param game  the game
+     * @param group the group that left the game
+     */
+    public void unindexGameGroup(Game game, PlayerGroup group) {
+        for (UUID member : group.getMembers()) {
+            gamesByPlayer.remove(member, game);
+        }
+    }
+
+    /**
+     * Registers the world as the world the game is played in in the index that backs {@link #getGame(World)}.
+     * <p>
+     * Game implementations must call this whenever their {@link Game#setWorld(GameWorld) game world is set}.
+     *
+     * @param game  the game
+     * @param world the Bukkit world of the game instance
+     */
+    public void indexGameWorld(Game game, World world) {
+        gamesByWorld.put(world.getUID(), game);
+    }
+
+    /**
+     * Removes all index entries of the game.
+     * <p>
+     * Game implementations must call this when they are {@link Game#delete() deleted}. This is done automatically when the game world is
+     * unloaded.
+     *
+     * @param game the game
+     */
+    public void unindexGame(Game game) {
+        gamesByPlayer.values().removeIf(g -> g == game);
+        gamesByWorld.values().removeIf(g -> g == game);
+    }
+
+    /**
+     * Registers the mob in the index that backs {@link #getDungeonMob(LivingEntity)}.
+     * <p>
+     * Game world implementations must call this whenever they {@link GameWorld#addMob(DungeonMob) add a mob}. This is done automatically for
+     * mobs whose spawn is announced through a {@link de.erethon.dungeonsxl.api.event.mob.DungeonMobSpawnEvent}.
+     *
+     * @param mob the mob
+     */
+    public void indexDungeonMob(DungeonMob mob) {
+        mobsByEntity.put(mob.getEntity().getUniqueId(), mob);
+    }
+
+    /**
+     * Removes the mob from the entity index.
+     * <p>
+     * Game world implementations must call this whenever they {@link GameWorld#removeMob(DungeonMob) remove a mob}. This is done
+     * automatically when a mob dies.
+     *
+     * @param mob the mob
+     */
+    public void unindexDungeonMob(DungeonMob mob) {
+        mobsByEntity.remove(mob.getEntity().getUniqueId(), mob);
+    }
+
+    /**
+     * Removes the mob that wraps the entity from the entity index.
+     *
+     * @param entity the entity
+     */
+    public void unindexEntity(LivingEntity entity) {
+        mobsByEntity.remove(entity.getUniqueId());
+    }
+
+    /**
+     * Removes all mobs of the game world from the entity index.
+     *
+     * @param gameWorld the game world
+     */
+    public void unindexDungeonMobs(GameWorld gameWorld) {
+        for (DungeonMob mob : gameWorld.getMobs()) {
+            unindexDungeonMob(mob);
+        }
+    }
+
+    /**
+     * Registers the instance in the index that backs {@link #getInstanceWorld(World)} and {@link #isInstance(World)}.
+     * <p>
+     * Instance implementations must call this as soon as their Bukkit world is loaded; worlds that are not indexed are not treated as instances.
+     * Edit worlds are indexed automatically when an {@link de.erethon.dungeonsxl.api.event.world.EditWorldGenerateEvent} passes. Instances are
+     * removed automatically when an {@link de.erethon.dungeonsxl.api.event.world.InstanceWorldUnloadEvent} passes.
+     *
+     * @param instance the instance
+     */
+    public void indexInstance(InstanceWorld instance) {
+        instancesByWorld.put(instance.getWorld().getUID(), instance);
+        if (instance instanceof EditWorld) {
+            dirtyRegionTracker.start((EditWorld) instance);
+        }
+    }
+
+    /**
+     * Removes the instance from the world index.
+     *
+     * @param instance the instance
+     */
+    public void unindexInstance(InstanceWorld instance) {
+        instancesByWorld.remove(instance.getWorld().getUID(), instance);
+    }
+
+    /**
+     * Removes the player from the index of players known not to be in a group.
+     * <p>
+     * This is done when the player quits.
+     *
+     * @param player the UUID of the player
+     */
+    public void forgetUngrouped(UUID player) {
+        ungrouped.remove(player);
+    }
+
+    /**
+     * Compares the member index against a full scan of the {@link #getGroupCache() group cache}.
+     * <p>
+     * Members that have not been looked up yet do not need to be indexed. This is expensive and only meant to be used for debugging.
+     *
+     * @return if every indexed player is a member of the group they are indexed to and no player indexed as ungrouped is a member of a group
+     */
+    public boolean isGroupIndexConsistent() {
+        for (Map.Entry<UUID, PlayerGroup> entry : groupsByMember.entrySet()) {
+            if (!entry.getValue().getMembers().contains(entry.getKey())) {
+                return false;
+            }
+        }
+        if (playerGroupCache == null) {
+            return true;
+        }
+        for (PlayerGroup group : playerGroupCache) {
+            for (UUID member : group.getMembers()) {
+                if (ungrouped.contains(member)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private WorldCopier.Mode readCopyMode() {
+        String mode = getConfig().getString(COPY_MODE_KEY, WorldCopier.Mode.COPY.name());
+        try {
+            return WorldCopier.Mode.valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException exception) {
+            getLogger().log(Level.WARNING, "Unknown " + COPY_MODE_KEY + " \"" + mode + "\"; game instances are copied");
+            return WorldCopier.Mode.COPY;
+        }
+    }
+
+    /**
+     * Returns the engine that copies world folders asynchronously.
+     * <p>
+     * The default mode is read from the {@link #COPY_MODE_KEY} of the main config and is only used for game instances. Edit instances must be copied with
+     * {@link WorldCopier.Mode#COPY} explicitly.
+     *
+     * @return the engine that copies world folders asynchronously
+     */
+    public WorldCopier getWorldCopier() {
+        return worldCopier;
+    }
+
+    /**
+     * Returns the background deleter for instance folders.
+     *
+     * @return the background deleter for instance folders
+     */
+    public FolderDeleter getFolderDeleter() {
+        return folderDeleter;
+    }
+
+    /**
+     * Returns the store that keeps incremental backups of the maps.
+     * <p>
+     * {@link de.erethon.dungeonsxl.api.world.ResourceWorld#backup()} and the {@link #getCrashRecovery() crash recovery} save their backups here.
+     *
+     * @return the store that keeps incremental backups of the maps
+     */
+    public BackupStore getBackupStore() {
+        return backupStore;
+    }
+
+    /**
+     * Returns the tracker of changes in edit worlds that makes saving them incremental.
+     *
+     * @return the tracker of changes in edit worlds
+     */
+    public DirtyRegionTracker getDirtyRegionTracker() {
+        return dirtyRegionTracker;
+    }
+
+    /**
+     * Returns the cache of precompiled sign tables of the resource worlds.
+     *
+     * @return the cache of precompiled sign tables
+     */
+    public SignTableCache getSignTableCache() {
+        return signTableCache;
+    }
+
+    /**
+     * Returns the scheduler that spreads mob spawns over several ticks.
+     * <p>
+     * Mob signs should queue their spawns here instead of spawning them immediately.
+     *
+     * @return the scheduler that spreads mob spawns over several ticks
+     */
+    public SpawnScheduler getSpawnScheduler() {
+        return spawnScheduler;
+    }
+
+    /**
+     * Returns the recovery of edit sessions that were not closed properly.
+     * <p>
+     * Instances of a map that is {@link CrashRecovery#isRecovering(String) recovering} must not be created until the recovery is finished.
+     *
+     * @return the recovery of edit sessions that were not closed properly
+     */
+    public CrashRecovery getCrashRecovery() {
+        return crashRecovery;
+    }
+
+    /**
+     * Returns the pool of game instances that are copied in advance.
+     *
+     * @return the pool of game instances that are copied in advance
+     */
+    public InstancePool getInstancePool() {
+        return instancePool;
+    }
+
+    /**
+     * Returns the queue that creates game instances.
+     *
+     * @return the queue that creates game instances
+     */
+    public InstanceScheduler getInstanceScheduler() {
+        return instanceScheduler;
+    }
+
+    /**
+     * Returns the registry of transient NPC clones or null if Citizens is not enabled.
+     *
+     * @return the registry of transient NPC clones
+     */
+    public DNPCRegistry getDNPCRegistry() {
+        return dNPCRegistry;
+    }
+
+    /**
+     * Creates an empty folder for a new game instance with the lowest free ID.
+     *
+     * @return the new folder
+     */
+    public File createGameInstanceFolder() {
+        File container = Bukkit.getWorldContainer();
+        for (int id = 0;; id++) {
+            String name = "DXL_Game_" + id;
+            File folder = new File(container, name);
+            if (!folder.exists() && Bukkit.getWorld(name) == null) {
+                folder.mkdir();
+                return folder;
+            }
+        }
+    }
+
     @Override
     public void registerModule(DungeonModule module) {
         modules.add(module);
+        module.initializeGameRules(GameRule.REGISTRY);
+        module.initializeSignRegistry(signRegistry);
+    }
+
+    @Override
+    public SignRegistry getSignRegistry() {
+        return signRegistry;
+    }
+
+    @Override
+    public TimerWheel getTimerWheel() {
+        return timerWheel;
     }
 
     @Override
@@ -226,22 +662,22 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
 
     /**
      * Returns true if the plugin is currently loading a world, false if not.
-     * <p>
-     * If the plugin is loading a world, it is locked in order to prevent loading two at once.
      *
-     * @return true if the plugin is currently loading a world, false if not
+     * @deprecated game instances are queued by the {@link #getInstanceScheduler() instance scheduler} instead of being rejected while another world loads
+     * @return true if a world is being loaded through the legacy lock or if the instance scheduler is busy, false if not
      */
+    @Deprecated
     public boolean isLoadingWorld() {
-        return loadingWorld;
+        return loadingWorld || (instanceScheduler != null && !instanceScheduler.isIdle());
     }
 
     /**
      * Notifies the plugin that a world is being loaded.
-     * <p>
-     * If the plugin is loading a world, it is locked in order to prevent loading two at once.
      *
+     * @deprecated game instances are queued by the {@link #getInstanceScheduler() instance scheduler} instead of being rejected while another world loads
      * @param loadingWorld if a world is being loaded
      */
+    @Deprecated
     public void setLoadingWorld(boolean loadingWorld) {
         log("World loading is now " + (loadingWorld ? "LOCKED" : "UNLOCKED"));
         this.loadingWorld = loadingWorld;
@@ -258,13 +694,19 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
     /* Getters */
     @Override
     public DungeonMob getDungeonMob(LivingEntity entity) {
+        DungeonMob mob = mobsByEntity.get(entity.getUniqueId());
+        if (mob != null) {
+            return mob;
+        }
+        // Game worlds that do not index their mobs yet are scanned and indexed here
         GameWorld gameWorld = getGameWorld(entity.getWorld());
         if (gameWorld == null) {
             return null;
         }
-        for (DungeonMob mob : gameWorld.getMobs()) {
-            if (mob.getEntity() == entity) {
-                return mob;
+        for (DungeonMob cached : gameWorld.getMobs()) {
+            if (cached.getEntity() == entity) {
+                indexDungeonMob(cached);
+                return cached;
             }
         }
         return null;
@@ -272,28 +714,64 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
 
     @Override
     public PlayerGroup getPlayerGroup(Player member) {
-        for (PlayerGroup group : playerGroupCache) {
-            if (group.getMembers().contains(member)) {
+        UUID uuid = member.getUniqueId();
+        PlayerGroup group = groupsByMember.get(uuid);
+        if (group != null) {
+            if (group.getMembers().contains(uuid)) {
                 return group;
             }
+            // The member was removed without the group unindexing them
+            groupsByMember.remove(uuid);
+        } else if (ungrouped.contains(uuid)) {
+            return null;
+        }
+        if (playerGroupCache == null) {
+            return null;
         }
+        // Groups that do not index their members yet are found and indexed here
+        for (PlayerGroup cached : playerGroupCache) {
+            if (cached.getMembers().contains(uuid)) {
+                indexGroupMember(cached, uuid);
+                return cached;
+            }
+        }
+        ungrouped.add(uuid);
         return null;
     }
 
     @Override
     public Game getGame(Player player) {
-        for (Game game : gameCache) {
-            if (game.getPlayers().contains(player)) {
-                return game;
-            }
+        UUID uuid = player.getUniqueId();
+        // Players leave the game together with their group
+        PlayerGroup group = getPlayerGroup(player);
+        if (group == null) {
+            gamesByPlayer.remove(uuid);
+            return null;
         }
-        return null;
+        Game game = gamesByPlayer.get(uuid);
+        if (game != null) {
+            return game;
+        }
+        // Games that do not index their players yet are found through the group and indexed here
+        game = group.getGame();
+        if (game != null) {
+            gamesByPlayer.put(uuid, game);
+        }
+        return game;
     }
 
     @Override
     public Game getGame(World world) {
+        Game game = gamesByWorld.get(world.getUID());
+        if (game != null) {
+            return game;
+        }
         GameWorld gameWorld = getGameWorld(world);
-        return gameWorld != null ? gameWorld.getGame() : null;
+        game = gameWorld != null ? gameWorld.getGame() : null;
+        if (game != null) {
+            indexGameWorld(game, world);
+        }
+        return game;
     }
 
     @Override
@@ -308,13 +786,19 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
         return instance instanceof EditWorld ? (EditWorld) instance : null;
     }
 
+    /**
+     * Returns the instance that wraps the given world or null if the world is not an instance.
+     *
+     * @param world the world
+     * @return the instance that wraps the given world or null if the world is not an instance
+     */
     public InstanceWorld getInstanceWorld(World world) {
-        return null;
+        return instancesByWorld.get(world.getUID());
     }
 
     @Override
     public boolean isInstance(World world) {
-        return world.getName().startsWith("DXL_Game_") || world.getName().startsWith("DXL_Edit_");
+        return instancesByWorld.containsKey(world.getUID());
     }
 
     @Override
@@ -344,8 +828,19 @@ public class DungeonsXL extends DREPlugin implements DungeonsAPI {
 
     /**
      * Clean up all instances.
+     * <p>
+     * The worlds are unloaded immediately; their folders are deleted by the {@link #getFolderDeleter() folder deleter}.
      */
     public void deleteAllInstances() {
+        for (InstanceWorld instance : new ArrayList<>(instancesByWorld.values())) {
+            instance.delete();
+        }
+        if (instanceScheduler != null) {
+            instanceScheduler.stop();
+        }
+        if (instancePool != null) {
+            instancePool.stop();
+        }
     }
 
     /**
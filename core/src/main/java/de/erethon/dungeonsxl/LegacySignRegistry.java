@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl;
+
+import de.erethon.dungeonsxl.api.sign.DungeonSign;
+import de.erethon.dungeonsxl.api.sign.SignFactory;
+import de.erethon.dungeonsxl.api.sign.SignRegistry;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * A {@link SignRegistry} that falls back to {@link DungeonsXL#LEGACY_SIGNS} for types that are not registered.
+ * <p>
+ * Plugins that still put their types into the legacy map in their own onEnable, i.e. after DungeonsXL has filled the registry, keep working: Their entries
+ * are registered when a lookup misses, and a deprecation warning is logged once per entry.
+ *
+ * @author Daniel Saukel
+ */
+class LegacySignRegistry extends SignRegistry {
+
+    private DungeonsXL plugin;
+    private Set<String> resolved = new HashSet<>();
+
+    LegacySignRegistry(DungeonsXL plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public Class<? extends DungeonSign> getType(String name) {
+        Class<? extends DungeonSign> type = super.getType(name);
+        return type != null || !resolveLegacySigns() ? type : super.getType(name);
+    }
+
+    @Override
+    public SignFactory getFactory(String name) {
+        SignFactory factory = super.getFactory(name);
+        return factory != null || !resolveLegacySigns() ? factory : super.getFactory(name);
+    }
+
+    @Override
+    public SignFactory getFactory(Class<? extends DungeonSign> type) {
+        SignFactory factory = super.getFactory(type);
+        return factory != null || !resolveLegacySigns() ? factory : super.getFactory(type);
+    }
+
+    @Override
+    public SignFactory getFactoryByClassName(String className) {
+        SignFactory factory = super.getFactoryByClassName(className);
+        return factory != null || !resolveLegacySigns() ? factory : super.getFactoryByClassName(className);
+    }
+
+    @Override
+    public Collection<String> getNames() {
+        resolveLegacySigns();
+        return super.getNames();
+    }
+
+    /**
+     * Registers the entries that have been added to the legacy map since the last call.
+     *
+     * @return if any entry was registered
+     */
+    private boolean resolveLegacySigns() {
+        if (resolved.size() >= DungeonsXL.LEGACY_SIGNS.size()) {
+            return false;
+        }
+        boolean registered = false;
+        for (Entry<String, Class<? extends DungeonSign>> entry : DungeonsXL.LEGACY_SIGNS.entrySet()) {
+            if (!resolved.add(entry.getKey().toUpperCase()) || super.getType(entry.getKey()) != null) {
+                continue;
+            }
+            try {
+                register(entry.getKey(), entry.getValue());
+                registered = true;
+                plugin.getLogger().warning("The sign type " + entry.getKey() + " (" + entry.getValue().getName() + ") was added to the deprecated "
+                        + "DungeonsXL.LEGACY_SIGNS map; it should be registered through DungeonModule#initializeSignRegistry instead");
+            } catch (IllegalArgumentException exception) {
+                plugin.getLogger().warning("Could not register the legacy sign type " + entry.getKey() + ": " + exception.getMessage());
+            }
+        }
+        return registered;
+    }
+
+}
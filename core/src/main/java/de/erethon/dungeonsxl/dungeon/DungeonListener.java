@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.dungeon;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.dungeon.Game;
+import de.erethon.dungeonsxl.api.event.DataReloadEvent;
+import de.erethon.dungeonsxl.api.event.group.GroupStartFloorEvent;
+import de.erethon.dungeonsxl.api.mob.CommandTemplate;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+/**
+ * Keeps the {@link Game#getCompiledRules() compiled rules} of the running games and the cached {@link CommandTemplate}s up to date.
+ *
+ * @author Daniel Saukel
+ */
+public class DungeonListener implements Listener {
+
+    private DungeonsXL plugin;
+
+    public DungeonListener(DungeonsXL plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStartFloor(GroupStartFloorEvent event) {
+        Game game = event.getGameWorld().getGame();
+        if (game != null) {
+            game.compileRules();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onReload(DataReloadEvent event) {
+        CommandTemplate.clearCache();
+        // The data is reloaded after the event has passed
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (plugin.getGameCache() != null) {
+                plugin.getGameCache().forEach(Game::compileRules);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2012-2022 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.mob;
+
+import de.erethon.dungeonsxl.api.event.world.EditWorldSaveEvent;
+import net.citizensnpcs.api.event.CitizensReloadEvent;
+import net.citizensnpcs.api.event.NPCAddTraitEvent;
+import net.citizensnpcs.api.event.NPCCommandDispatchEvent;
+import net.citizensnpcs.api.event.NPCDespawnEvent;
+import net.citizensnpcs.api.event.NPCRemoveEvent;
+import net.citizensnpcs.api.event.NPCRemoveTraitEvent;
+import net.citizensnpcs.api.event.NPCSpawnEvent;
+import net.citizensnpcs.api.npc.NPC;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+/**
+ * Keeps the entity index and the NPC snapshots of the {@link DNPCRegistry} up to date.
+ * <p>
+ * Snapshots are invalidated when traits are added or removed, when a Citizens command is run on the NPC, when Citizens is reloaded and, for the NPCs
+ * that are stored in the map, when a map is saved. Changes of the registry's own clones never invalidate anything. Editors like the one of /npc equip change the NPC after their command has been dispatched, so these changes are only picked up when the editor is
+ * left through its command again or when the map is saved. Changes that other plugins make to existing traits through the API are not detected at all;
+ * they must call {@link DNPCRegistry#invalidateSnapshot(net.citizensnpcs.api.npc.NPC)} themselves.
+ *
+ * @author Daniel Saukel
+ */
+public class CitizensListener implements Listener {
+
+    private DNPCRegistry registry;
+
+    public CitizensListener(DNPCRegistry registry) {
+        this.registry = registry;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSpawn(NPCSpawnEvent event) {
+        registry.indexSpawn(event.getNPC());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onDespawn(NPCDespawnEvent event) {
+        registry.unindexSpawn(event.getNPC());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAddTrait(NPCAddTraitEvent event) {
+        invalidate(event.getNPC());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRemoveTrait(NPCRemoveTraitEvent event) {
+        invalidate(event.getNPC());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRemove(NPCRemoveEvent event) {
+        invalidate(event.getNPC());
+    }
+
+    // Commands like /npc equip change traits without adding or removing them. Toggling an editor off is a command, too.
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onCommand(NPCCommandDispatchEvent event) {
+        invalidate(event.getNPC());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onReload(CitizensReloadEvent event) {
+        registry.invalidateSnapshots();
+    }
+
+    // Catches edits that were made after the last command, e.g. clicks in an editor
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEditWorldSave(EditWorldSaveEvent event) {
+        registry.invalidateSnapshots(event.getEditWorld().getWorld());
+    }
+
+    private void invalidate(NPC npc) {
+        // Clones are created and reset by the registry itself and are never templates
+        if (npc.getOwningRegistry() != registry) {
+            registry.invalidateSnapshot(npc);
+        }
+    }
+
+}
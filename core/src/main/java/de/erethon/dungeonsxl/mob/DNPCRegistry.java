@@ -16,10 +16,23 @@
  */
 package de.erethon.dungeonsxl.mob;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import net.citizensnpcs.Settings.Setting;
 import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.event.DespawnReason;
 import net.citizensnpcs.api.event.NPCCreateEvent;
 import net.citizensnpcs.api.npc.AbstractNPC;
 import net.citizensnpcs.api.npc.NPC;
@@ -35,17 +48,53 @@ import net.citizensnpcs.trait.ArmorStandTrait;
 import net.citizensnpcs.trait.LookClose;
 import net.citizensnpcs.trait.MountTrait;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 
 /**
+ * A registry for dungeon-local NPCs that is separate from the native Citizens registry.
+ * <p>
+ * NPCs are indexed by ID, UUID, entity ID and the world they are {@link #assign(NPC, World) assigned} to, so lookups never search the global registry
+ * and all NPCs of a game instance can be {@link #deregisterAll(World) deregistered} at once. Methods that fall back to the global registry are suffixed with "Global".
+ *
  * @author Daniel Saukel
  */
 public class DNPCRegistry implements NPCRegistry {
 
+    // Spawned and CurrentLocation; loading them would spawn the clone where the template is
+    private static final List<String> SPAWN_TRAITS = Arrays.asList("spawned", "location");
+
+    private AtomicInteger nextId = new AtomicInteger();
+    private Map<Integer, NPC> npcsById = new ConcurrentHashMap<>();
+    private Map<UUID, NPC> npcsByUniqueId = new ConcurrentHashMap<>();
+    private Map<Integer, NPC> npcsByEntity = new ConcurrentHashMap<>();
+    private Map<UUID, Set<NPC>> npcsByWorld = new ConcurrentHashMap<>();
+    // NPC UUID -> world UID
+    private Map<UUID, UUID> owners = new ConcurrentHashMap<>();
+    private Map<UUID, DataKey> snapshots = new HashMap<>();
+    private NPCPool pool;
+
+    /**
+     * @param poolSize the maximum amount of idle clones per template NPC in the {@link #getPool() pool}
+     */
+    public DNPCRegistry(int poolSize) {
+        pool = new NPCPool(this, poolSize);
+    }
+
+    /**
+     * Returns the pool of recyclable clones.
+     *
+     * @return the pool of recyclable clones
+     */
+    public NPCPool getPool() {
+        return pool;
+    }
+
     @Override
     public NPC createNPC(EntityType type, String name) {
-        return createNPC(type, UUID.randomUUID(), 0, name);
+        return createNPC(type, UUID.randomUUID(), nextId.getAndIncrement(), name);
     }
 
     @Override
@@ -54,6 +103,8 @@ public class DNPCRegistry implements NPCRegistry {
         if (npc == null) {
             throw new IllegalStateException("Could not create NPC: npc is null");
         }
+        npcsById.put(id, npc);
+        npcsByUniqueId.put(uuid, npc);
 
         Bukkit.getPluginManager().callEvent(new NPCCreateEvent(npc));
 
@@ -68,68 +119,249 @@ public class DNPCRegistry implements NPCRegistry {
         return npc;
     }
 
+    /**
+     * Assigns the NPC to the world, usually the game instance it was created or {@link NPCPool#acquire(AbstractNPC, org.bukkit.Location) acquired}
+     * for.
+     * <p>
+     * The assignment does not depend on whether the NPC is spawned, so NPCs that die in a game are still {@link #deregisterAll(World) deregistered} or
+     * {@link NPCPool#releaseAll(World) released} when the instance is unloaded.
+     *
+     * @param npc   the NPC
+     * @param world the world
+     */
+    public void assign(NPC npc, World world) {
+        unassign(npc);
+        owners.put(npc.getUniqueId(), world.getUID());
+        npcsByWorld.computeIfAbsent(world.getUID(), w -> ConcurrentHashMap.newKeySet()).add(npc);
+    }
+
+    /**
+     * Removes the NPC from the world it is {@link #assign(NPC, World) assigned} to.
+     *
+     * @param npc the NPC
+     */
+    public void unassign(NPC npc) {
+        UUID owner = owners.remove(npc.getUniqueId());
+        Set<NPC> npcs = owner != null ? npcsByWorld.get(owner) : null;
+        if (npcs != null) {
+            npcs.remove(npc);
+        }
+    }
+
+    /**
+     * Indexes the entity of a spawned NPC of this registry.
+     *
+     * @param npc the NPC
+     */
+    public void indexSpawn(NPC npc) {
+        Entity entity = npc.getEntity();
+        if (npc.getOwningRegistry() == this && entity != null) {
+            npcsByEntity.put(entity.getEntityId(), npc);
+        }
+    }
+
+    /**
+     * Removes the entity of a despawned NPC of this registry from the index.
+     *
+     * @param npc the NPC
+     */
+    public void unindexSpawn(NPC npc) {
+        Entity entity = npc.getEntity();
+        if (npc.getOwningRegistry() == this && entity != null) {
+            npcsByEntity.remove(entity.getEntityId(), npc);
+        }
+    }
+
     @Override
     public void deregister(NPC npc) {
-        CitizensAPI.getNPCRegistry().deregister(npc);
+        npcsById.remove(npc.getId(), npc);
+        npcsByUniqueId.remove(npc.getUniqueId(), npc);
+        unassign(npc);
+        pool.forget(npc);
+        if (npc.isSpawned()) {
+            npc.despawn(DespawnReason.REMOVAL);
+        }
+    }
+
+    /**
+     * Deregisters and despawns all NPCs of this registry that are {@link #assign(NPC, World) assigned} to the world.
+     *
+     * @param world the world, usually a game instance that is unloaded
+     */
+    public void deregisterAll(World world) {
+        Set<NPC> npcs = npcsByWorld.remove(world.getUID());
+        if (npcs == null) {
+            return;
+        }
+        for (NPC npc : npcs) {
+            deregister(npc);
+        }
     }
 
+    /**
+     * Deregisters and despawns all NPCs of this registry. NPCs of other registries are not affected.
+     */
     @Override
     public void deregisterAll() {
-        CitizensAPI.getNPCRegistry().deregisterAll();
+        for (NPC npc : npcsById.values()) {
+            deregister(npc);
+        }
+        npcsByEntity.clear();
+        npcsByWorld.clear();
+        owners.clear();
     }
 
     @Override
     public NPC getById(int id) {
-        return CitizensAPI.getNPCRegistry().getById(id);
+        return npcsById.get(id);
     }
 
     @Override
     public NPC getByUniqueId(UUID uuid) {
-        return CitizensAPI.getNPCRegistry().getByUniqueId(uuid);
+        return npcsByUniqueId.get(uuid);
     }
 
+    /**
+     * Returns the NPC of this registry or, if there is none, the NPC of any Citizens registry that has the UUID.
+     *
+     * @param uuid the UUID
+     * @return the NPC that has the UUID
+     */
     @Override
     public NPC getByUniqueIdGlobal(UUID uuid) {
-        return CitizensAPI.getNPCRegistry().getByUniqueIdGlobal(uuid);
+        NPC npc = getByUniqueId(uuid);
+        return npc != null ? npc : CitizensAPI.getNPCRegistry().getByUniqueIdGlobal(uuid);
     }
 
     @Override
     public NPC getNPC(Entity entity) {
-        return CitizensAPI.getNPCRegistry().getNPC(entity);
+        return entity != null ? npcsByEntity.get(entity.getEntityId()) : null;
+    }
+
+    /**
+     * Returns the NPC of this registry or, if there is none, the NPC of any Citizens registry that the entity belongs to.
+     *
+     * @param entity the entity
+     * @return the NPC that the entity belongs to
+     */
+    public NPC getNPCGlobal(Entity entity) {
+        NPC npc = getNPC(entity);
+        return npc != null ? npc : CitizensAPI.getNPCRegistry().getNPC(entity);
     }
 
     @Override
     public boolean isNPC(Entity entity) {
-        return CitizensAPI.getNPCRegistry().isNPC(entity);
+        return getNPC(entity) != null;
+    }
+
+    /**
+     * Returns the NPCs of this registry that are {@link #assign(NPC, World) assigned} to the world, whether they are spawned or not.
+     *
+     * @param world the world
+     * @return the NPCs of this registry that are assigned to the world
+     */
+    public Collection<NPC> getNPCs(World world) {
+        Set<NPC> npcs = npcsByWorld.get(world.getUID());
+        return npcs != null ? new ArrayList<>(npcs) : Collections.emptyList();
     }
 
     @Override
     public Iterable<NPC> sorted() {
-        return CitizensAPI.getNPCRegistry().sorted();
+        List<NPC> sorted = new ArrayList<>(npcsById.values());
+        sorted.sort(Comparator.comparingInt(NPC::getId));
+        return sorted;
     }
 
     @Override
     public Iterator<NPC> iterator() {
-        return CitizensAPI.getNPCRegistry().iterator();
+        return Collections.unmodifiableCollection(npcsById.values()).iterator();
     }
 
     /**
      * Clones an NPC without spamming the config.
+     * <p>
+     * The clone is loaded from the cached {@link #getSnapshot(AbstractNPC) snapshot} of the NPC. It stays registered until it is deregistered, so it
+     * should be {@link #assign(NPC, World) assigned} to the instance it is used in; clones from the {@link #getPool() pool} are assigned automatically.
      *
      * @param npc the NPC to clone
      * @return a clone of the NPC
      */
     public NPC createTransientClone(AbstractNPC npc) {
         NPC copy = createNPC(npc.getTrait(MobType.class).getType(), npc.getFullName());
-        DataKey key = new MemoryDataKey();
-        save(npc, key);
-        copy.load(key);
+        copy.load(getSnapshot(npc));
         for (Trait trait : copy.getTraits()) {
             trait.onCopy();
         }
         return copy;
     }
 
+    /**
+     * Returns the serialized data of the NPC, which is only created once until it is {@link #invalidateSnapshot(NPC) invalidated}.
+     * <p>
+     * The snapshot does not contain the spawn state and the location of the NPC, so loading it never spawns a clone.
+     *
+     * @param npc the NPC
+     * @return the serialized data of the NPC
+     */
+    public DataKey getSnapshot(AbstractNPC npc) {
+        DataKey key = snapshots.get(npc.getUniqueId());
+        if (key == null) {
+            key = new MemoryDataKey();
+            save(npc, key);
+            for (String trait : SPAWN_TRAITS) {
+                key.removeKey("traits." + trait);
+            }
+            key.setString("traitnames", Arrays.stream(key.getString("traitnames").split(",")).filter(t -> !SPAWN_TRAITS.contains(t))
+                    .collect(Collectors.joining(",")));
+            snapshots.put(npc.getUniqueId(), key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the cached snapshot of the NPC with the UUID without creating it.
+     *
+     * @param npc the UUID of the NPC
+     * @return the cached snapshot or null if there is none
+     */
+    DataKey getCachedSnapshot(UUID npc) {
+        return snapshots.get(npc);
+    }
+
+    /**
+     * Removes the cached snapshot and the pooled clones of the NPC so that the next clone reflects its changes.
+     *
+     * @param npc the NPC
+     */
+    public void invalidateSnapshot(NPC npc) {
+        snapshots.remove(npc.getUniqueId());
+        pool.invalidate(npc.getUniqueId());
+    }
+
+    /**
+     * Removes all cached snapshots and pooled clones.
+     */
+    public void invalidateSnapshots() {
+        snapshots.clear();
+        pool.clear();
+    }
+
+    /**
+     * Removes the cached snapshots and pooled clones of the NPCs that are stored in the world and of the NPCs that do not exist anymore.
+     *
+     * @param world the world, usually an edit world that is saved
+     */
+    public void invalidateSnapshots(World world) {
+        for (UUID uuid : new ArrayList<>(snapshots.keySet())) {
+            NPC npc = CitizensAPI.getNPCRegistry().getByUniqueId(uuid);
+            Location location = npc != null ? npc.getStoredLocation() : null;
+            if (npc == null || location != null && world.equals(location.getWorld())) {
+                snapshots.remove(uuid);
+                pool.invalidate(uuid);
+            }
+        }
+    }
+
     // Like in AbstractNPC#save(DataKey), but without persistence stuff
     public void save(AbstractNPC npc, DataKey root) {
         if (!npc.data().get(NPC.SHOULD_SAVE_METADATA, true)) {
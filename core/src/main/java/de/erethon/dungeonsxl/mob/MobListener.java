@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.mob;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.event.mob.DungeonMobDeathEvent;
+import de.erethon.dungeonsxl.api.event.mob.DungeonMobSpawnEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+
+/**
+ * Keeps the entity index that backs {@link DungeonsXL#getDungeonMob(org.bukkit.entity.LivingEntity)} up to date.
+ *
+ * @author Daniel Saukel
+ */
+public class MobListener implements Listener {
+
+    private DungeonsXL plugin;
+
+    public MobListener(DungeonsXL plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onSpawn(DungeonMobSpawnEvent event) {
+        plugin.indexDungeonMob(event.getDungeonMob());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMobDeath(DungeonMobDeathEvent event) {
+        plugin.unindexDungeonMob(event.getDungeonMob());
+    }
+
+    // Mobs may also die without a DungeonMobDeathEvent, e.g. if they are removed by a command
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDeath(EntityDeathEvent event) {
+        plugin.unindexEntity(event.getEntity());
+    }
+
+}
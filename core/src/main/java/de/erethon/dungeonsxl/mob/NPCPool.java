@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2012-2022 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.mob;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import net.citizensnpcs.api.event.DespawnReason;
+import net.citizensnpcs.api.npc.AbstractNPC;
+import net.citizensnpcs.api.npc.NPC;
+import net.citizensnpcs.api.trait.Trait;
+import net.citizensnpcs.api.util.DataKey;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+/**
+ * Keeps despawned, fully traited {@link DNPCRegistry#createTransientClone(AbstractNPC) clones} of template NPCs ready so that game instances do not need to create
+ * their NPCs from scratch.
+ * <p>
+ * Clones are {@link #acquire(AbstractNPC, Location) acquired} when an instance is loaded and {@link #release(NPC) released} when it is unloaded. When the
+ * snapshot of a template is invalidated, its idle clones are destroyed and clones that are in use are destroyed instead of being pooled when they are released.
+ *
+ * @author Daniel Saukel
+ */
+public class NPCPool {
+
+    // The metadata keys Citizens knows, like NPC.DEFAULT_PROTECTED_METADATA
+    private static final List<String> METADATA_KEYS = new ArrayList<>();
+
+    static {
+        for (Field field : NPC.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class && field.getName().endsWith("_METADATA")) {
+                try {
+                    METADATA_KEYS.add((String) field.get(null));
+                } catch (IllegalAccessException exception) {
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a new clone of a template that released clones are reset to.
+     */
+    private static class CloneState {
+
+        private Set<String> traits = new HashSet<>();
+        private int metadata;
+
+        CloneState(NPC clone) {
+            for (Trait trait : clone.getTraits()) {
+                traits.add(trait.getName());
+            }
+            metadata = clone.data().size();
+        }
+
+    }
+
+    private DNPCRegistry registry;
+    private int maxIdle;
+    private Map<UUID, Deque<NPC>> idle = new HashMap<>();
+    // clone UUID -> template UUID
+    private Map<UUID, UUID> templates = new HashMap<>();
+    // template UUID -> state of a new clone
+    private Map<UUID, CloneState> states = new HashMap<>();
+
+    /**
+     * @param registry the registry that creates the clones
+     * @param maxIdle  the maximum amount of idle clones per template
+     */
+    public NPCPool(DNPCRegistry registry, int maxIdle) {
+        this.registry = registry;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns an idle clone of the template or creates a new one if there is none and spawns it at the location.
+     * <p>
+     * If the clone cannot be spawned, e.g. because the spawn event was cancelled, it is released again.
+     *
+     * @param template the template NPC
+     * @param location the location where the clone is spawned
+     * @return the spawned clone or null if it could not be spawned
+     */
+    public NPC acquire(AbstractNPC template, Location location) {
+        Deque<NPC> clones = idle.get(template.getUniqueId());
+        NPC npc = clones != null ? clones.poll() : null;
+        if (npc == null) {
+            npc = create(template);
+        }
+        registry.assign(npc, location.getWorld());
+        if (!npc.spawn(location)) {
+            release(npc);
+            return null;
+        }
+        return npc;
+    }
+
+    /**
+     * Creates idle clones of the template until there are as many as requested or the maximum is reached.
+     *
+     * @param template the template NPC
+     * @param amount   the amount of idle clones
+     */
+    public void fill(AbstractNPC template, int amount) {
+        Deque<NPC> clones = idle.computeIfAbsent(template.getUniqueId(), t -> new ArrayDeque<>());
+        while (clones.size() < Math.min(amount, maxIdle)) {
+            clones.add(create(template));
+        }
+    }
+
+    /**
+     * Despawns the clone and keeps it for the next instance or destroys it if the pool of its template is full or if the template has changed.
+     * <p>
+     * Pooled clones are reset to the state of a new clone so that they do not carry the state of the previous game into the next one: traits a new clone
+     * does not have are removed, the metadata Citizens knows is removed and the rest is reloaded from the snapshot of their template. Clones that keep
+     * metadata of other plugins are destroyed instead. The entity itself is created anew when the clone is spawned again.
+     *
+     * @param npc the clone
+     */
+    public void release(NPC npc) {
+        if (npc.isSpawned()) {
+            npc.despawn(DespawnReason.PLUGIN);
+        }
+        registry.unassign(npc);
+        UUID template = templates.get(npc.getUniqueId());
+        DataKey snapshot = template != null ? registry.getCachedSnapshot(template) : null;
+        CloneState state = template != null ? states.get(template) : null;
+        Deque<NPC> clones = snapshot != null && state != null ? idle.computeIfAbsent(template, t -> new ArrayDeque<>()) : null;
+        if (clones != null && clones.size() < maxIdle && reset(npc, snapshot, state)) {
+            clones.add(npc);
+        } else {
+            destroy(npc);
+        }
+    }
+
+    private boolean reset(NPC npc, DataKey snapshot, CloneState state) {
+        List<Trait> traits = new ArrayList<>();
+        npc.getTraits().forEach(traits::add);
+        for (Trait trait : traits) {
+            if (!state.traits.contains(trait.getName())) {
+                npc.removeTrait(trait.getClass());
+            }
+        }
+        for (String key : METADATA_KEYS) {
+            npc.data().remove(key);
+        }
+        npc.load(snapshot);
+        return npc.data().size() <= state.metadata;
+    }
+
+    /**
+     * Releases all clones.
+     *
+     * @param npcs the clones
+     */
+    public void releaseAll(Collection<NPC> npcs) {
+        for (NPC npc : npcs) {
+            release(npc);
+        }
+    }
+
+    /**
+     * Releases all NPCs of the registry that are {@link DNPCRegistry#assign(NPC, World) assigned} to the world, including the ones that died. NPCs that
+     * have not been acquired from this pool are destroyed.
+     *
+     * @param world the world, usually a game instance that is unloaded
+     */
+    public void releaseAll(World world) {
+        releaseAll(registry.getNPCs(world));
+        // Drops the now empty world entry
+        registry.deregisterAll(world);
+    }
+
+    /**
+     * Destroys the idle clones of the template. Clones of the template that are in use are destroyed when they are released.
+     *
+     * @param template the UUID of the template NPC
+     */
+    public void invalidate(UUID template) {
+        // No clone of the template has been created
+        if (states.remove(template) == null) {
+            return;
+        }
+        Deque<NPC> clones = idle.remove(template);
+        if (clones != null) {
+            clones.forEach(this::destroy);
+        }
+        templates.values().removeIf(template::equals);
+    }
+
+    /**
+     * Destroys all idle clones. Clones that are in use are destroyed when they are released.
+     */
+    public void clear() {
+        List<Deque<NPC>> all = new ArrayList<>(idle.values());
+        idle.clear();
+        all.forEach(c -> c.forEach(this::destroy));
+        templates.clear();
+        states.clear();
+    }
+
+    /**
+     * Returns the amount of idle clones of the template.
+     *
+     * @param template the UUID of the template NPC
+     * @return the amount of idle clones of the template
+     */
+    public int getIdle(UUID template) {
+        Deque<NPC> clones = idle.get(template);
+        return clones != null ? clones.size() : 0;
+    }
+
+    /**
+     * Removes all references to the clone. This is called when the clone is deregistered.
+     *
+     * @param npc the clone
+     */
+    void forget(NPC npc) {
+        UUID template = templates.remove(npc.getUniqueId());
+        Deque<NPC> clones = template != null ? idle.get(template) : null;
+        if (clones != null) {
+            clones.remove(npc);
+        }
+    }
+
+    private NPC create(AbstractNPC template) {
+        NPC npc = registry.createTransientClone(template);
+        templates.put(npc.getUniqueId(), template.getUniqueId());
+        states.putIfAbsent(template.getUniqueId(), new CloneState(npc));
+        return npc;
+    }
+
+    private void destroy(NPC npc) {
+        templates.remove(npc.getUniqueId());
+        npc.destroy();
+    }
+
+}
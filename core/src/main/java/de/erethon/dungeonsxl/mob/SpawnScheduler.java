@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2012-2022 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.mob;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.world.GameWorld;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Spreads mob spawns over several ticks.
+ * <p>
+ * Spawns are queued per game world and processed every tick until the time budget of the tick is used up, but at least one spawn per tick is done.
+ * Instances are served round-robin; instances that players are in come before the others. For every wave, the scheduler records the backlog and the
+ * latency from queueing a spawn until it is done. The statistics of a wave are finished when the next one {@link #startWave(GameWorld, int) starts}.
+ *
+ * @author Daniel Saukel
+ */
+public class SpawnScheduler {
+
+    /**
+     * The statistics of a wave.
+     */
+    public static class WaveReport {
+
+        private int wave;
+        private int spawned;
+        private int maxBacklog;
+        private long totalLatency;
+        private long maxLatency;
+
+        WaveReport(int wave) {
+            this.wave = wave;
+        }
+
+        /**
+         * Returns the number of the wave.
+         *
+         * @return the number of the wave
+         */
+        public int getWave() {
+            return wave;
+        }
+
+        /**
+         * Returns the amount of spawns done so far.
+         *
+         * @return the amount of spawns done so far
+         */
+        public int getSpawned() {
+            return spawned;
+        }
+
+        /**
+         * Returns the highest amount of spawns that were queued at the same time.
+         *
+         * @return the highest amount of spawns that were queued at the same time
+         */
+        public int getMaxBacklog() {
+            return maxBacklog;
+        }
+
+        /**
+         * Returns the average time from queueing a spawn until it was done in milliseconds.
+         *
+         * @return the average latency in milliseconds
+         */
+        public double getAverageLatencyMillis() {
+            return spawned == 0 ? 0 : totalLatency / (double) spawned / 1000000D;
+        }
+
+        /**
+         * Returns the longest time from queueing a spawn until it was done in milliseconds.
+         *
+         * @return the longest latency in milliseconds
+         */
+        public double getMaxLatencyMillis() {
+            return maxLatency / 1000000D;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{wave=" + wave + "; spawned=" + spawned + "; maxBacklog=" + maxBacklog
+                    + String.format("; avgLatency=%.1fms; maxLatency=%.1fms}", getAverageLatencyMillis(), getMaxLatencyMillis());
+        }
+
+    }
+
+    private static class Spawn {
+
+        private Runnable action;
+        private long queuedAt;
+
+        Spawn(Runnable action, long queuedAt) {
+            this.action = action;
+            this.queuedAt = queuedAt;
+        }
+
+    }
+
+    private static class InstanceQueue {
+
+        private GameWorld gameWorld;
+        private Deque<Spawn> spawns = new ArrayDeque<>();
+        private WaveReport current = new WaveReport(0);
+        private WaveReport last;
+
+        InstanceQueue(GameWorld gameWorld) {
+            this.gameWorld = gameWorld;
+        }
+
+    }
+
+    private DungeonsXL plugin;
+    private long budget;
+
+    private Map<GameWorld, InstanceQueue> queues = new HashMap<>();
+    /**
+     * The queues that have pending spawns, in round-robin order.
+     */
+    private Deque<InstanceQueue> rotation = new ArrayDeque<>();
+    private int backlog;
+    private BukkitTask task;
+
+    /**
+     * @param plugin the plugin instance
+     * @param budget the time in nanoseconds that may be spent on spawning mobs per tick
+     */
+    public SpawnScheduler(DungeonsXL plugin, long budget) {
+        this.plugin = plugin;
+        this.budget = budget;
+    }
+
+    /* Getters and setters */
+    /**
+     * Returns the time in nanoseconds that may be spent on spawning mobs per tick.
+     *
+     * @return the time in nanoseconds that may be spent on spawning mobs per tick
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the time in nanoseconds that may be spent on spawning mobs per tick.
+     *
+     * @param budget the time in nanoseconds
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the amount of spawns that are queued in all instances.
+     *
+     * @return the amount of spawns that are queued in all instances
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Returns the amount of spawns that are queued in the instance.
+     *
+     * @param gameWorld the instance
+     * @return the amount of spawns that are queued in the instance
+     */
+    public int getBacklog(GameWorld gameWorld) {
+        InstanceQueue queue = queues.get(gameWorld);
+        return queue != null ? queue.spawns.size() : 0;
+    }
+
+    /**
+     * Returns the statistics of the current wave of the instance.
+     *
+     * @param gameWorld the instance
+     * @return the statistics of the current wave or null if nothing was spawned in the instance yet
+     */
+    public WaveReport getCurrentReport(GameWorld gameWorld) {
+        InstanceQueue queue = queues.get(gameWorld);
+        return queue != null ? queue.current : null;
+    }
+
+    /**
+     * Returns the statistics of the last finished wave of the instance.
+     *
+     * @param gameWorld the instance
+     * @return the statistics of the last finished wave or null if there is none
+     */
+    public WaveReport getLastReport(GameWorld gameWorld) {
+        InstanceQueue queue = queues.get(gameWorld);
+        return queue != null ? queue.last : null;
+    }
+
+    /* Actions */
+    /**
+     * Starts the task that processes the queues.
+     */
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops the task and drops all queued spawns.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        queues.clear();
+        rotation.clear();
+        backlog = 0;
+    }
+
+    /**
+     * Marks the beginning of a new wave in the instance. The statistics of the previous wave are finished.
+     * <p>
+     * Game implementations must call this when a wave starts.
+     *
+     * @param gameWorld the instance
+     * @param wave      the number of the wave
+     */
+    public void startWave(GameWorld gameWorld, int wave) {
+        InstanceQueue queue = queues.computeIfAbsent(gameWorld, InstanceQueue::new);
+        finishWave(queue);
+        queue.current = new WaveReport(wave);
+    }
+
+    /**
+     * Queues a spawn in the instance.
+     *
+     * @param gameWorld the instance
+     * @param spawn     the action that spawns the mob
+     */
+    public void schedule(GameWorld gameWorld, Runnable spawn) {
+        InstanceQueue queue = queues.computeIfAbsent(gameWorld, InstanceQueue::new);
+        if (queue.spawns.isEmpty()) {
+            rotation.add(queue);
+        }
+        queue.spawns.add(new Spawn(spawn, System.nanoTime()));
+        queue.current.maxBacklog = Math.max(queue.current.maxBacklog, queue.spawns.size());
+        backlog++;
+    }
+
+    /**
+     * Drops all queued spawns and statistics of the instance.
+     *
+     * @param gameWorld the instance
+     * @return the amount of dropped spawns
+     */
+    public int cancel(GameWorld gameWorld) {
+        InstanceQueue queue = queues.remove(gameWorld);
+        if (queue == null) {
+            return 0;
+        }
+        rotation.remove(queue);
+        backlog -= queue.spawns.size();
+        return queue.spawns.size();
+    }
+
+    private void tick() {
+        if (rotation.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        // Watched instances first, both groups in their round-robin order
+        List<InstanceQueue> order = new ArrayList<>(rotation.size());
+        List<InstanceQueue> unwatched = new ArrayList<>();
+        for (InstanceQueue queue : rotation) {
+            if (!queue.gameWorld.getWorld().getPlayers().isEmpty()) {
+                order.add(queue);
+            } else {
+                unwatched.add(queue);
+            }
+        }
+        order.addAll(unwatched);
+
+        int i = 0;
+        long now = start;
+        do {
+            if (i >= order.size()) {
+                i = 0;
+            }
+            InstanceQueue queue = order.get(i);
+            if (queues.get(queue.gameWorld) != queue) {
+                // Cancelled by a previous spawn
+                order.remove(i);
+                continue;
+            }
+            spawn(queue);
+            now = System.nanoTime();
+            if (queue.spawns.isEmpty()) {
+                order.remove(i);
+            } else {
+                i++;
+            }
+        } while (!order.isEmpty() && now - start < budget);
+
+        // The instance that is next in line starts the next tick; spawns might have queued further spawns
+        Deque<InstanceQueue> next = new ArrayDeque<>();
+        for (int k = 0; k < order.size(); k++) {
+            next.add(order.get((i + k) % order.size()));
+        }
+        for (InstanceQueue queue : rotation) {
+            if (!queue.spawns.isEmpty() && queues.get(queue.gameWorld) == queue && !next.contains(queue)) {
+                next.add(queue);
+            }
+        }
+        rotation = next;
+    }
+
+    private void spawn(InstanceQueue queue) {
+        Spawn spawn = queue.spawns.poll();
+        backlog--;
+        try {
+            spawn.action.run();
+        } catch (Exception exception) {
+            plugin.getLogger().log(Level.SEVERE, "Could not spawn a mob in " + queue.gameWorld.getWorld().getName(), exception);
+        }
+        long latency = System.nanoTime() - spawn.queuedAt;
+        WaveReport report = queue.current;
+        report.spawned++;
+        report.totalLatency += latency;
+        report.maxLatency = Math.max(report.maxLatency, latency);
+    }
+
+    private void finishWave(InstanceQueue queue) {
+        if (queue.current.spawned == 0) {
+            return;
+        }
+        queue.last = queue.current;
+        plugin.log("Spawned wave in " + queue.gameWorld.getWorld().getName() + ": " + queue.last);
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.player;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.event.group.GroupDisbandEvent;
+import de.erethon.dungeonsxl.api.event.group.GroupPlayerJoinEvent;
+import de.erethon.dungeonsxl.api.event.group.GroupPlayerKickEvent;
+import de.erethon.dungeonsxl.api.event.group.GroupPlayerLeaveEvent;
+import de.erethon.dungeonsxl.api.player.PlayerGroup;
+import java.util.UUID;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Keeps the member index that backs {@link DungeonsXL#getPlayerGroup(org.bukkit.entity.Player)} up to date.
+ * <p>
+ * The group events are called before the member is actually added or removed, so additions are indexed again one tick later.
+ *
+ * @author Daniel Saukel
+ */
+public class GroupListener implements Listener {
+
+    private DungeonsXL plugin;
+
+    public GroupListener(DungeonsXL plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onJoin(GroupPlayerJoinEvent event) {
+        PlayerGroup group = event.getGroup();
+        UUID member = event.getPlayer().getUniqueId();
+        plugin.indexGroupMember(group, member);
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (group.getMembers().contains(member)) {
+                plugin.indexGroupMember(group, member);
+            }
+            plugin.log("Member index is inconsistent with the group cache", plugin, DungeonsXL::isGroupIndexConsistent);
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onLeave(GroupPlayerLeaveEvent event) {
+        plugin.unindexGroupMember(event.getGroup(), event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onKick(GroupPlayerKickEvent event) {
+        plugin.unindexGroupMember(event.getGroup(), event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onDisband(GroupDisbandEvent event) {
+        plugin.unindexGroup(event.getGroup());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        plugin.forgetUngrouped(event.getPlayer().getUniqueId());
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Written from 2015-2021 by Daniel Saukel
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software
+ * to the public domain worldwide.
+ *
+ * This software is distributed without any warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication
+ * along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package de.erethon.dungeonsxl.util.commons.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Daniel Saukel
+ */
+public class FileUtil {
+
+    /**
+     * Copies a directory recursively.
+     *
+     * @param source   the directory to copy
+     * @param dest     the target directory; created if it does not exist
+     * @param excluded names of files and directories in the source directory that shall not be copied
+     * @throws IOException if a file cannot be copied
+     */
+    public static void copyDir(File source, File dest, String... excluded) throws IOException {
+        Path sourcePath = source.toPath();
+        Path destPath = dest.toPath();
+        List<String> excludedList = Arrays.asList(excluded);
+        Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(sourcePath) && excludedList.contains(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(destPath.resolve(sourcePath.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!excludedList.contains(file.getFileName().toString())) {
+                    Files.copy(file, destPath.resolve(sourcePath.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Deletes a directory recursively.
+     * <p>
+     * Links are removed without touching their targets: Symbolic links to directories are not followed and deleting a hard link only removes the link itself.
+     *
+     * @param dir the directory to delete
+     * @return if the directory does not exist anymore
+     */
+    public static boolean removeDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+                    removeDir(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        return dir.delete() || !dir.exists();
+    }
+
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.util.commons.misc.FileUtil;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+
+/**
+ * Stores backups of maps incrementally.
+ * <p>
+ * Every file is stored only once under the SHA-256 hash of its content in the <code>objects</code> folder. A backup is a manifest in
+ * <code>manifests/&lt;map&gt;</code> that maps the relative paths of the files to their hashes, so files that did not change are shared between backups.
+ * Files whose size and modification time match the previous backup of the same map are not even hashed again.
+ * <p>
+ * All operations run on a single background thread, so that pruning never deletes an object that a running backup still refers to.
+ *
+ * @author Daniel Saukel
+ */
+public class BackupStore {
+
+    public static final String MANIFEST_EXTENSION = ".manifest";
+
+    /**
+     * A backup of a map.
+     */
+    public static class Snapshot {
+
+        private String map;
+        private long time;
+        private String tag;
+        private File file;
+
+        Snapshot(String map, long time, String tag, File file) {
+            this.map = map;
+            this.time = time;
+            this.tag = tag;
+            this.file = file;
+        }
+
+        /**
+         * Returns the name of the map.
+         *
+         * @return the name of the map
+         */
+        public String getMap() {
+            return map;
+        }
+
+        /**
+         * Returns the time when the backup was created in milliseconds.
+         *
+         * @return the time when the backup was created in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the tag that describes why the backup was created, e.g. "crash", or null.
+         *
+         * @return the tag that describes why the backup was created
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * Returns the manifest file.
+         *
+         * @return the manifest file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{map=" + map + "; time=" + time + "; tag=" + tag + "}";
+        }
+
+    }
+
+    private static class Entry {
+
+        private String hash;
+        private long size;
+        private long modified;
+
+        Entry(String hash, long size, long modified) {
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+        }
+
+    }
+
+    private File objects;
+    private File manifests;
+    private File temp;
+    private ExecutorService executor;
+
+    private int keepLast;
+    private long maxAge;
+
+    /**
+     * @param root     the folder of the store
+     * @param keepLast the amount of backups per map that are never pruned
+     * @param maxAge   the age in milliseconds after which backups that exceed keepLast are pruned; 0 to prune them immediately
+     */
+    public BackupStore(File root, int keepLast, long maxAge) {
+        objects = new File(root, "objects");
+        manifests = new File(root, "manifests");
+        temp = new File(root, "tmp");
+        this.keepLast = keepLast;
+        this.maxAge = maxAge;
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "DungeonsXL Backup Store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Objects and manifests that were not finished when the server stopped
+        executor.execute(() -> FileUtil.removeDir(temp));
+    }
+
+    /* Getters and setters */
+    /**
+     * Returns the amount of backups per map that are never pruned.
+     *
+     * @return the amount of backups per map that are never pruned
+     */
+    public int getKeepLast() {
+        return keepLast;
+    }
+
+    /**
+     * Returns the age in milliseconds after which backups that exceed {@link #getKeepLast()} are pruned.
+     *
+     * @return the age in milliseconds after which backups are pruned
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Sets the retention policy. The change takes effect when the next backup is created or when {@link #prune(String)} is called.
+     *
+     * @param keepLast the amount of backups per map that are never pruned
+     * @param maxAge   the age in milliseconds after which backups that exceed keepLast are pruned
+     */
+    public void setRetention(int keepLast, long maxAge) {
+        this.keepLast = keepLast;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Returns the backups of the map, the newest first.
+     *
+     * @param map the name of the map
+     * @return the backups of the map
+     */
+    public List<Snapshot> getSnapshots(String map) {
+        List<Snapshot> snapshots = new ArrayList<>();
+        File[] files = new File(manifests, map).listFiles();
+        if (files == null) {
+            return snapshots;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(MANIFEST_EXTENSION)) {
+                continue;
+            }
+            name = name.substring(0, name.length() - MANIFEST_EXTENSION.length());
+            String[] parts = name.split("-", 2);
+            try {
+                snapshots.add(new Snapshot(map, Long.parseLong(parts[0]), parts.length == 2 ? parts[1] : null, file));
+            } catch (NumberFormatException exception) {
+                // Not a manifest of this store
+            }
+        }
+        snapshots.sort(Comparator.comparingLong(Snapshot::getTime).reversed());
+        return snapshots;
+    }
+
+    /* Actions */
+    /**
+     * Creates a backup of the folder in the background and prunes old backups of the map afterwards.
+     * <p>
+     * The future is completed as soon as the backup is written; errors while pruning are only logged. Pooled instances of the map are
+     * {@link InstancePool#evict(String) evicted}.
+     *
+     * @param folder the folder to back up
+     * @param map    the name of the map
+     * @param tag    a tag that describes why the backup was created or null
+     * @return a future that is completed with the new backup
+     */
+    public CompletableFuture<Snapshot> backup(File folder, String map, String tag) {
+        evict(map);
+        return CompletableFuture.supplyAsync(() -> {
+            Snapshot snapshot;
+            try {
+                snapshot = write(folder, map, tag);
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+            // The backup is complete at this point; pruning must not fail it
+            try {
+                prune(map, System.currentTimeMillis());
+            } catch (IOException | RuntimeException exception) {
+                DungeonsXL.getInstance().getLogger().log(Level.WARNING, "Could not prune the backups of " + map, exception);
+            }
+            return snapshot;
+        }, executor);
+    }
+
+    /**
+     * Restores a backup into the folder in the background.
+     * <p>
+     * Files in the folder that are not part of the backup are deleted. Pooled instances of the map are {@link InstancePool#evict(String) evicted}.
+     *
+     * @param snapshot the backup to restore
+     * @param folder   the target folder
+     * @return a future that is completed when the backup is restored
+     */
+    public CompletableFuture<Void> restore(Snapshot snapshot, File folder) {
+        evict(snapshot.getMap());
+        return CompletableFuture.runAsync(() -> {
+            try {
+                Map<String, Entry> entries = readManifest(snapshot.getFile());
+                Path root = folder.toPath();
+                Files.createDirectories(root);
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    Path target = root.resolve(entry.getKey());
+                    Files.createDirectories(target.getParent());
+                    Files.copy(getObject(entry.getValue().hash).toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+                    Files.setLastModifiedTime(target, FileTime.fromMillis(entry.getValue().modified));
+                }
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (!entries.containsKey(relativize(root, file))) {
+                            Files.delete(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+        }, executor);
+    }
+
+    /**
+     * Applies the retention policy to the backups of the map in the background and deletes files that are not referenced by any backup anymore.
+     *
+     * @param map the name of the map
+     * @return a future that is completed with the amount of pruned backups
+     */
+    public CompletableFuture<Integer> prune(String map) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return prune(map, System.currentTimeMillis());
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits until the queued operations are done.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if all operations are done, false if the timeout elapsed first
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // The instance pool is not thread-safe
+    private static void evict(String map) {
+        DungeonsXL plugin = DungeonsXL.getInstance();
+        if (plugin == null || !plugin.isEnabled() || plugin.getInstancePool() == null) {
+            return;
+        }
+        if (Bukkit.isPrimaryThread()) {
+            plugin.getInstancePool().evict(map);
+        } else {
+            plugin.getServer().getScheduler().runTask(plugin, () -> plugin.getInstancePool().evict(map));
+        }
+    }
+
+    private Snapshot write(File folder, String map, String tag) throws IOException {
+        List<Snapshot> snapshots = getSnapshots(map);
+        Map<String, Entry> previous = snapshots.isEmpty() ? Collections.emptyMap() : readManifest(snapshots.get(0).getFile());
+        Map<String, Entry> entries = new HashMap<>();
+        Path root = folder.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String path = relativize(root, file);
+                long modified = attrs.lastModifiedTime().toMillis();
+                Entry entry = previous.get(path);
+                if (entry == null || entry.size != attrs.size() || entry.modified != modified || !getObject(entry.hash).exists()) {
+                    entry = new Entry(store(file), attrs.size(), modified);
+                }
+                entries.put(path, entry);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        File directory = new File(manifests, map);
+        directory.mkdirs();
+        long time = System.currentTimeMillis();
+        if (!snapshots.isEmpty() && snapshots.get(0).getTime() >= time) {
+            time = snapshots.get(0).getTime() + 1;
+        }
+        File file = new File(directory, time + (tag != null ? "-" + tag : "") + MANIFEST_EXTENSION);
+        File tempFile = createTempFile();
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(value.hash + "\t" + value.size + "\t" + value.modified + "\t" + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return new Snapshot(map, time, tag, file);
+    }
+
+    private String store(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+        File tempFile = createTempFile();
+        try (InputStream in = Files.newInputStream(file); OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile.toPath()), digest)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        File object = getObject(hash.toString());
+        if (object.exists()) {
+            tempFile.delete();
+        } else {
+            object.getParentFile().mkdirs();
+            Files.move(tempFile.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        return hash.toString();
+    }
+
+    private int prune(String map, long now) throws IOException {
+        List<Snapshot> snapshots = getSnapshots(map);
+        int pruned = 0;
+        for (int i = keepLast; i < snapshots.size(); i++) {
+            Snapshot snapshot = snapshots.get(i);
+            if (now - snapshot.getTime() >= maxAge && snapshot.getFile().delete()) {
+                pruned++;
+            }
+        }
+        if (pruned > 0) {
+            collectGarbage();
+        }
+        return pruned;
+    }
+
+    private void collectGarbage() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        File[] maps = manifests.listFiles();
+        if (maps != null) {
+            for (File map : maps) {
+                for (Snapshot snapshot : getSnapshots(map.getName())) {
+                    for (Entry entry : readManifest(snapshot.getFile()).values()) {
+                        referenced.add(entry.hash);
+                    }
+                }
+            }
+        }
+        File[] buckets = objects.listFiles();
+        if (buckets == null) {
+            return;
+        }
+        for (File bucket : buckets) {
+            File[] files = bucket.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (!referenced.contains(bucket.getName() + file.getName())) {
+                    file.delete();
+                }
+            }
+            bucket.delete();
+        }
+    }
+
+    private Map<String, Entry> readManifest(File file) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 4);
+                if (parts.length == 4) {
+                    entries.put(parts[3], new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private File getObject(String hash) {
+        return new File(new File(objects, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    private File createTempFile() throws IOException {
+        temp.mkdirs();
+        return File.createTempFile("dxl", null, temp);
+    }
+
+    private static String relativize(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+}
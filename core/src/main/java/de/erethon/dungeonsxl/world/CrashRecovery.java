@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.util.commons.misc.FileUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Restores edit sessions that were not saved properly because the server crashed.
+ * <p>
+ * The world container is scanned for folders of edit instances and each of them is recovered in parallel: The resource world is backed up into the
+ * {@link DungeonsXL#getBackupStore() backup store} and then overwritten with the files of the instance. Until the scan is finished, all maps are
+ * considered to be {@link #isRecovering(String) recovering}; afterwards only the ones that are still being restored.
+ *
+ * @author Daniel Saukel
+ */
+public class CrashRecovery {
+
+    public static final String MARKER_PREFIX = ".id_";
+    /**
+     * The folder where edit instances that do not belong to any map are moved to.
+     */
+    public static final File QUARANTINE = new File(DungeonsXL.BACKUPS, "unidentified");
+
+    private DungeonsXL plugin;
+    private ExecutorService executor;
+
+    private volatile boolean scanning = true;
+    private Set<String> recovering = ConcurrentHashMap.newKeySet();
+    private AtomicInteger total = new AtomicInteger();
+    private AtomicInteger recovered = new AtomicInteger();
+    private AtomicInteger failed = new AtomicInteger();
+    private CompletableFuture<Void> future;
+
+    /**
+     * @param plugin  the plugin instance
+     * @param threads the amount of edit sessions that may be recovered at the same time
+     */
+    public CrashRecovery(DungeonsXL plugin, int threads) {
+        this.plugin = plugin;
+        AtomicInteger threadId = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "DungeonsXL Crash Recovery #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts scanning the world container and recovering the edit sessions found there.
+     *
+     * @param worldContainer the world container
+     * @return a future that is completed when all edit sessions are recovered
+     */
+    public CompletableFuture<Void> start(File worldContainer) {
+        if (future != null) {
+            return future;
+        }
+        long start = System.currentTimeMillis();
+        future = CompletableFuture.supplyAsync(() -> listEditFolders(worldContainer), executor).thenCompose(folders -> {
+            total.set(folders.size());
+            List<CompletableFuture<String>> scans = new ArrayList<>(folders.size());
+            List<CompletableFuture<Void>> recoveries = new ArrayList<>(folders.size());
+            for (File folder : folders) {
+                CompletableFuture<String> scan = CompletableFuture.supplyAsync(() -> scan(folder), executor);
+                scans.add(scan);
+                recoveries.add(scan.thenCompose(name -> recover(folder, name)));
+            }
+            CompletableFuture.allOf(scans.toArray(new CompletableFuture[scans.size()])).whenComplete((v, throwable) -> scanning = false);
+            return CompletableFuture.allOf(recoveries.toArray(new CompletableFuture[recoveries.size()]));
+        }).whenComplete((v, throwable) -> {
+            scanning = false;
+            recovering.clear();
+            executor.shutdown();
+            if (throwable != null) {
+                plugin.getLogger().log(Level.SEVERE, "Crash recovery failed", throwable);
+            } else if (total.get() > 0) {
+                plugin.getLogger().info("Crash recovery finished in " + (System.currentTimeMillis() - start) + " ms: " + recovered.get() + " maps recovered, "
+                        + failed.get() + " failed");
+            }
+        });
+        return future;
+    }
+
+    private List<File> listEditFolders(File worldContainer) {
+        File[] files = worldContainer.listFiles();
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        List<File> folders = new ArrayList<>();
+        for (File file : files) {
+            if (file.isDirectory() && file.getName().startsWith("DXL_Edit_")) {
+                folders.add(file);
+            }
+        }
+        if (!folders.isEmpty()) {
+            plugin.getLogger().info("Found " + folders.size() + " edit sessions that were not closed properly; recovering them in the background");
+        }
+        return folders;
+    }
+
+    private String scan(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(MARKER_PREFIX)) {
+                    String name = file.getName().substring(MARKER_PREFIX.length());
+                    recovering.add(name);
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Backs up the resource world and then overwrites it with the files of the instance. The backup runs in the single-threaded backup store, so the
+     * worker thread is only occupied once the backup is finished.
+     */
+    private CompletableFuture<Void> recover(File folder, String name) {
+        if (name == null) {
+            return CompletableFuture.runAsync(() -> quarantine(folder), executor);
+        }
+
+        File resource = new File(DungeonsXL.MAPS, name);
+        return plugin.getBackupStore().backup(resource, name, "crash").thenRunAsync(() -> overwrite(folder, resource, name), executor).handle((v, throwable) -> {
+            recovering.remove(name);
+            if (throwable != null) {
+                failed.incrementAndGet();
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                plugin.getLogger().log(Level.SEVERE, "Could not recover map " + name + " from " + folder.getName() + "; the instance folder is kept", cause);
+            } else {
+                plugin.getLogger().info("[" + (recovered.incrementAndGet() + failed.get()) + "/" + total.get() + "] Recovered map " + name);
+            }
+            return null;
+        });
+    }
+
+    private void overwrite(File folder, File resource, String name) {
+        try {
+            // Remove all files from the backed up resource world but not the config & data that we cannot fetch from the instance.
+            File[] files = resource.listFiles();
+            if (files != null) {
+                List<String> excluded = Arrays.asList(DungeonsXL.EXCLUDED_FILES);
+                for (File file : files) {
+                    if (excluded.contains(file.getName())) {
+                        continue;
+                    }
+                    if (file.isDirectory()) {
+                        FileUtil.removeDir(file);
+                    } else {
+                        file.delete();
+                    }
+                }
+            }
+            // Copy all files from the instance to the resource world.
+            FileUtil.copyDir(folder, resource, DungeonsXL.EXCLUDED_FILES);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        new File(resource, MARKER_PREFIX + name).delete();
+        plugin.getFolderDeleter().delete(folder);
+    }
+
+    /**
+     * Moves an edit instance folder that cannot be assigned to a map out of the world container instead of deleting it because it might contain unsaved
+     * edits.
+     */
+    private void quarantine(File folder) {
+        File dest = new File(QUARANTINE, folder.getName() + "-" + System.currentTimeMillis());
+        try {
+            QUARANTINE.mkdirs();
+            Files.move(folder.toPath(), dest.toPath());
+            plugin.getLogger().warning(folder.getName() + " does not belong to any map; it has been moved to " + dest.getPath());
+        } catch (IOException exception) {
+            plugin.getLogger().log(Level.WARNING, folder.getName() + " does not belong to any map and could not be moved; it is kept", exception);
+        }
+    }
+
+    /**
+     * Returns if instances of the map must not be created yet because the map might still be overwritten with the files of a crashed edit session.
+     *
+     * @param map the name of the map
+     * @return if instances of the map must not be created yet
+     */
+    public boolean isRecovering(String map) {
+        return scanning || recovering.contains(map);
+    }
+
+    /**
+     * Returns if the recovery is finished.
+     *
+     * @return if the recovery is finished
+     */
+    public boolean isDone() {
+        return future != null && future.isDone();
+    }
+
+    /**
+     * Waits until the running recoveries are finished.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the recovery is finished, false if the timeout elapsed first
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            if (future != null) {
+                // Recoveries that wait for their backup do not occupy the executor yet
+                future.get(timeout, unit);
+            }
+            executor.shutdown();
+            return executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException exception) {
+            executor.shutdown();
+            return false;
+        } catch (ExecutionException exception) {
+            // Already logged
+            executor.shutdown();
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.event.world.EditWorldSaveEvent;
+import de.erethon.dungeonsxl.api.world.EditWorld;
+import de.erethon.dungeonsxl.util.commons.misc.FileUtil;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+/**
+ * Tracks which parts of edit instances changed so that saving them only writes the changed files back to the resource.
+ * <p>
+ * Chunks are marked dirty by block changes and when signs are registered. As a safety net for changes that do not fire events, like e.g. WorldEdit
+ * operations, every file that was modified after the last save is considered to be changed as well.
+ *
+ * @author Daniel Saukel
+ */
+public class DirtyRegionTracker {
+
+    public static final String SIGN_DATA = "DXLData.data";
+    /**
+     * The folder in the resource that the changed files are written into before they replace the old ones.
+     */
+    public static final String TEMP_FOLDER = "DXLSave.tmp";
+    private static final String[] REGION_FOLDERS = {"region", "entities", "poi"};
+    private static final List<String> IGNORED_FILES = Arrays.asList("session.lock", "uid.dat");
+
+    /**
+     * Writes the sign data of an edit world into a file.
+     */
+    @FunctionalInterface
+    public interface SignDataWriter {
+
+        /**
+         * Writes the sign data into the file.
+         *
+         * @param file the file to write into
+         * @throws IOException if the file cannot be written
+         */
+        void write(File file) throws IOException;
+
+    }
+
+    private static class Session {
+
+        private Set<Long> dirtyChunks = new HashSet<>();
+        private boolean signsDirty;
+        private long since;
+
+        Session(long since) {
+            this.since = since;
+        }
+
+    }
+
+    private Map<UUID, Session> sessions = new HashMap<>();
+    private static Method flushMethod;
+    private static boolean flushResolved;
+
+    /**
+     * Starts tracking the edit world.
+     *
+     * @param editWorld the edit world
+     */
+    public void start(EditWorld editWorld) {
+        sessions.putIfAbsent(editWorld.getWorld().getUID(), new Session(System.currentTimeMillis()));
+    }
+
+    /**
+     * Stops tracking the edit world.
+     *
+     * @param editWorld the edit world
+     */
+    public void stop(EditWorld editWorld) {
+        sessions.remove(editWorld.getWorld().getUID());
+    }
+
+    /**
+     * Returns if the world is a tracked edit world.
+     *
+     * @param world the world
+     * @return if the world is a tracked edit world
+     */
+    public boolean isTracked(World world) {
+        return sessions.containsKey(world.getUID());
+    }
+
+    /**
+     * Marks the chunk of the block as changed if the block is in a tracked edit world.
+     *
+     * @param block the changed block
+     */
+    public void markDirty(Block block) {
+        Session session = sessions.get(block.getWorld().getUID());
+        if (session != null) {
+            session.dirtyChunks.add(pack(block.getX() >> 4, block.getZ() >> 4));
+        }
+    }
+
+    /**
+     * Marks the sign data and the chunk of the sign as changed.
+     * <p>
+     * Implementations of {@link EditWorld#registerSign(Block)} must call this.
+     *
+     * @param block the sign block
+     */
+    public void markSign(Block block) {
+        Session session = sessions.get(block.getWorld().getUID());
+        if (session != null) {
+            session.dirtyChunks.add(pack(block.getX() >> 4, block.getZ() >> 4));
+            session.signsDirty = true;
+        }
+    }
+
+    /**
+     * Returns if the edit world has unsaved changes that were tracked by events.
+     *
+     * @param editWorld the edit world
+     * @return if the edit world has unsaved changes that were tracked by events
+     */
+    public boolean isDirty(EditWorld editWorld) {
+        Session session = sessions.get(editWorld.getWorld().getUID());
+        return session != null && (session.signsDirty || !session.dirtyChunks.isEmpty());
+    }
+
+    /**
+     * Saves the edit world and writes the changed files back to its resource.
+     * <p>
+     * Every file is first written into the {@link #TEMP_FOLDER} of the resource and then replaces the old one atomically. An {@link EditWorldSaveEvent}
+     * that carries the changed files is called before anything is written back. Implementations of {@link EditWorld#save()} must call this.
+     *
+     * @param editWorld  the edit world
+     * @param signWriter writes the sign data if it changed
+     * @return the paths of the written files relative to the world folder or null if the event was cancelled
+     * @throws IOException if a file cannot be written back
+     */
+    public Set<String> save(EditWorld editWorld, SignDataWriter signWriter) throws IOException {
+        Session session = sessions.get(editWorld.getWorld().getUID());
+        if (session == null) {
+            start(editWorld);
+            session = sessions.get(editWorld.getWorld().getUID());
+            session.since = 0L;
+            session.signsDirty = true;
+        }
+        long savedAt = System.currentTimeMillis();
+        editWorld.getWorld().save();
+        flush(editWorld.getWorld());
+
+        File instance = editWorld.getFolder();
+        Set<String> changed = new HashSet<>();
+        for (long chunk : session.dirtyChunks) {
+            String regionFile = "r." + (unpackX(chunk) >> 5) + "." + (unpackZ(chunk) >> 5) + ".mca";
+            for (String folder : REGION_FOLDERS) {
+                if (new File(new File(instance, folder), regionFile).exists()) {
+                    changed.add(folder + "/" + regionFile);
+                }
+            }
+        }
+        changed.addAll(getModifiedFiles(instance, session.since));
+        if (session.signsDirty) {
+            changed.add(SIGN_DATA);
+        }
+
+        EditWorldSaveEvent event = new EditWorldSaveEvent(editWorld, Collections.unmodifiableSet(changed));
+        Bukkit.getPluginManager().callEvent(event);
+        if (event.isCancelled()) {
+            return null;
+        }
+
+        Path source = instance.toPath();
+        Path target = editWorld.getResource().getFolder().toPath();
+        // Leftovers of a save that crashed
+        File tempFolder = new File(editWorld.getResource().getFolder(), TEMP_FOLDER);
+        FileUtil.removeDir(tempFolder);
+        Files.createDirectories(tempFolder.toPath());
+        for (String file : changed) {
+            Path to = target.resolve(file);
+            Files.createDirectories(to.getParent());
+            Path temp = tempFolder.toPath().resolve(file.replace('/', '_'));
+            if (file.equals(SIGN_DATA)) {
+                signWriter.write(temp.toFile());
+            } else {
+                Files.copy(source.resolve(file), temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try {
+                Files.move(temp, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temp, to, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        FileUtil.removeDir(tempFolder);
+
+        session.dirtyChunks.clear();
+        session.signsDirty = false;
+        session.since = savedAt;
+        return changed;
+    }
+
+    /**
+     * {@link World#save()} only hands the chunks to the IO worker of the server, which writes them to the region files asynchronously. This saves the world
+     * again with flushing enabled so that the region files are complete before they are copied.
+     * <p>
+     * Bukkit does not provide this, so the server method is resolved once by its signature because its name is obfuscated in some versions. If it cannot be
+     * resolved, this is reported once and saves rely on {@link World#save()} only.
+     */
+    private static void flush(World world) {
+        try {
+            Object handle = world.getClass().getMethod("getHandle").invoke(world);
+            if (!flushResolved) {
+                flushResolved = true;
+                flushMethod = findFlushMethod(handle.getClass());
+                if (flushMethod == null) {
+                    Bukkit.getLogger().severe("[DungeonsXL] This server version does not allow to flush worlds; edit world saves might miss chunks that are"
+                            + " still being written");
+                }
+            }
+            if (flushMethod != null) {
+                flushMethod.invoke(handle, new Object[]{null, true, false});
+            }
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            flushMethod = null;
+            Bukkit.getLogger().log(Level.SEVERE, "[DungeonsXL] Could not flush " + world.getName() + "; edit world saves might miss chunks that are still"
+                    + " being written", exception);
+        }
+    }
+
+    // ServerLevel#save(ProgressListener progress, boolean flush, boolean skipSave)
+    private static Method findFlushMethod(Class<?> handle) {
+        for (Method method : handle.getMethods()) {
+            Class<?>[] params = method.getParameterTypes();
+            if (method.getReturnType() == void.class && params.length == 3 && params[1] == boolean.class && params[2] == boolean.class
+                    && (params[0].getSimpleName().equals("IProgressUpdate") || params[0].getSimpleName().equals("ProgressListener"))) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> getModifiedFiles(File instance, long since) throws IOException {
+        Set<String> modified = new HashSet<>();
+        Path root = instance.toPath();
+        List<String> excluded = Arrays.asList(DungeonsXL.EXCLUDED_FILES);
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(root) && excluded.contains(dir.getFileName().toString()) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String name = file.getFileName().toString();
+                if (attrs.lastModifiedTime().toMillis() >= since && !excluded.contains(name) && !IGNORED_FILES.contains(name)
+                        && !name.startsWith(CrashRecovery.MARKER_PREFIX)) {
+                    modified.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return modified;
+    }
+
+    private static long pack(int x, int z) {
+        return (long) x << 32 | z & 0xFFFFFFFFL;
+    }
+
+    private static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    private static int unpackZ(long packed) {
+        return (int) packed;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.util.commons.misc.FileUtil;
+import java.io.File;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes folders of unloaded instances in the background.
+ * <p>
+ * Deletions are queued and processed in parallel. The queue is unbounded so that a burst of unloaded instances never makes the main thread delete a folder
+ * itself; the amount of queued folders is available through {@link #getPending()}.
+ *
+ * @author Daniel Saukel
+ */
+public class FolderDeleter {
+
+    private ThreadPoolExecutor executor;
+    private AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * @param threads the amount of folders that may be deleted at the same time
+     */
+    public FolderDeleter(int threads) {
+        AtomicInteger threadId = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "DungeonsXL Folder Deleter #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the folder for deletion.
+     * <p>
+     * The world must already be unloaded.
+     *
+     * @param folder the folder to delete
+     */
+    public void delete(File folder) {
+        if (executor.isShutdown()) {
+            FileUtil.removeDir(folder);
+            return;
+        }
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                FileUtil.removeDir(folder);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Queues all folders in the world container that are left over from game instances of a previous run.
+     *
+     * @param worldContainer the world container
+     * @return the amount of queued folders
+     */
+    public int reclaim(File worldContainer) {
+        File[] files = worldContainer.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.isDirectory() && file.getName().startsWith("DXL_Game_")) {
+                delete(file);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the amount of folders that are queued or being deleted.
+     *
+     * @return the amount of folders that are queued or being deleted
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops accepting new deletions and waits until the queued ones are done.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if all queued folders have been deleted, false if the timeout elapsed first
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.world.ResourceWorld;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.WorldCreator;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Keeps copies of {@link ResourceWorld}s ready to be used as game instances sothat instantiating a game world does not need to wait for the map to be copied.
+ * <p>
+ * The pool is refilled one instance at a time while the {@link InstanceScheduler} is idle. The folders are copied by the {@link WorldCopier}; if preloading is enabled,
+ * the Bukkit world is loaded on the main thread afterwards.
+ *
+ * @author Daniel Saukel
+ */
+public class InstancePool {
+
+    public static final long REFILL_INTERVAL = 20L;
+    /**
+     * The key of the target size in the config.yml of a map and of the default target size in the main config.
+     */
+    public static final String CONFIG_KEY = "instancePoolSize";
+    /**
+     * The key in the main config that enables loading pooled worlds in advance.
+     */
+    public static final String PRELOAD_KEY = "instancePoolPreload";
+
+    /**
+     * An instance folder that has been copied in advance.
+     */
+    public static class PooledInstance {
+
+        private File folder;
+        private World world;
+
+        PooledInstance(File folder, World world) {
+            this.folder = folder;
+            this.world = world;
+        }
+
+        /**
+         * Returns the copied world folder. Its name is the name the Bukkit world must be loaded with.
+         *
+         * @return the copied world folder
+         */
+        public File getFolder() {
+            return folder;
+        }
+
+        /**
+         * Returns the preloaded Bukkit world or null if the world has not been loaded yet.
+         *
+         * @return the preloaded Bukkit world or null if the world has not been loaded yet
+         */
+        public World getWorld() {
+            return world;
+        }
+
+    }
+
+    private DungeonsXL plugin;
+    private int defaultTargetSize;
+    private boolean preload;
+
+    private Map<ResourceWorld, Integer> targetSizes = new HashMap<>();
+    private Map<ResourceWorld, Deque<PooledInstance>> pools = new HashMap<>();
+    private Map<ResourceWorld, Integer> generations = new HashMap<>();
+    private ResourceWorld refilling;
+    private int hits, misses;
+    private BukkitTask task;
+
+    /**
+     * @param plugin            the plugin instance
+     * @param defaultTargetSize the amount of instances to keep ready for maps that do not set {@link #CONFIG_KEY} in their config
+     * @param preload           if the Bukkit worlds shall be loaded in advance, too
+     */
+    public InstancePool(DungeonsXL plugin, int defaultTargetSize, boolean preload) {
+        this.plugin = plugin;
+        this.defaultTargetSize = defaultTargetSize;
+        this.preload = preload;
+    }
+
+    /**
+     * Starts the refill task.
+     */
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::refill, REFILL_INTERVAL, REFILL_INTERVAL);
+        }
+    }
+
+    /**
+     * Stops the refill task and deletes all pooled instances.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (ResourceWorld resource : new HashSet<>(pools.keySet())) {
+            clear(resource);
+        }
+    }
+
+    /**
+     * Takes a pooled instance of the resource out of the pool.
+     *
+     * @param resource the resource world
+     * @return a pooled instance or null if none is ready
+     */
+    public PooledInstance poll(ResourceWorld resource) {
+        register(resource);
+        Deque<PooledInstance> pool = pools.get(resource);
+        PooledInstance instance = pool != null ? pool.poll() : null;
+        if (instance != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the target size of the resource from its config sothat the pool starts to copy instances of it.
+     * <p>
+     * Resources are also registered when an instance of them is {@link #poll(ResourceWorld) polled} for the first time.
+     *
+     * @param resource the resource world
+     */
+    public void register(ResourceWorld resource) {
+        targetSizes.computeIfAbsent(resource, this::readTargetSize);
+    }
+
+    private int readTargetSize(ResourceWorld resource) {
+        File file = new File(resource.getFolder(), "config.yml");
+        if (!file.exists()) {
+            return defaultTargetSize;
+        }
+        return YamlConfiguration.loadConfiguration(file).getInt(CONFIG_KEY, defaultTargetSize);
+    }
+
+    /**
+     * Returns the amount of instances that are currently ready for the resource.
+     *
+     * @param resource the resource world
+     * @return the amount of instances that are currently ready for the resource
+     */
+    public int size(ResourceWorld resource) {
+        Deque<PooledInstance> pool = pools.get(resource);
+        return pool != null ? pool.size() : 0;
+    }
+
+    /**
+     * Returns the amount of instances the pool tries to keep ready for the resource.
+     *
+     * @param resource the resource world
+     * @return the amount of instances the pool tries to keep ready for the resource
+     */
+    public int getTargetSize(ResourceWorld resource) {
+        return targetSizes.getOrDefault(resource, defaultTargetSize);
+    }
+
+    /**
+     * Sets the amount of instances the pool tries to keep ready for the resource.
+     *
+     * @param resource   the resource world
+     * @param targetSize the target size; 0 to disable pooling for this resource
+     */
+    public void setTargetSize(ResourceWorld resource, int targetSize) {
+        targetSizes.put(resource, targetSize);
+    }
+
+    /**
+     * Returns how many times an instance could be taken out of the pool.
+     *
+     * @return how many times an instance could be taken out of the pool
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns how many times no instance was ready when one was requested.
+     *
+     * @return how many times no instance was ready when one was requested
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Deletes all pooled instances of the resource.
+     * <p>
+     * This must be done whenever the files of the resource change, i.e. when it is saved or backed up. Copies that are still in progress are discarded when
+     * they are finished. The target size is read from the config again.
+     *
+     * @param resource the resource world
+     */
+    public void evict(ResourceWorld resource) {
+        if (targetSizes.containsKey(resource)) {
+            targetSizes.put(resource, readTargetSize(resource));
+        }
+        clear(resource);
+    }
+
+    /**
+     * Deletes all pooled instances of the resource with the given name.
+     *
+     * @param map the name of the resource world
+     * @see #evict(ResourceWorld)
+     */
+    public void evict(String map) {
+        for (ResourceWorld resource : new ArrayList<>(targetSizes.keySet())) {
+            if (resource.getName().equals(map)) {
+                evict(resource);
+            }
+        }
+    }
+
+    private void clear(ResourceWorld resource) {
+        generations.merge(resource, 1, Integer::sum);
+        Deque<PooledInstance> pool = pools.remove(resource);
+        if (pool == null) {
+            return;
+        }
+        for (PooledInstance instance : pool) {
+            discard(instance.getFolder(), instance.getWorld());
+        }
+    }
+
+    private void refill() {
+        if (refilling != null || !plugin.getInstanceScheduler().isIdle()) {
+            return;
+        }
+        for (Entry<ResourceWorld, Integer> entry : targetSizes.entrySet()) {
+            if (size(entry.getKey()) < entry.getValue() && !plugin.getCrashRecovery().isRecovering(entry.getKey().getName())) {
+                fill(entry.getKey());
+                return;
+            }
+        }
+    }
+
+    private void fill(ResourceWorld resource) {
+        File folder = plugin.createGameInstanceFolder();
+        int generation = generations.getOrDefault(resource, 0);
+        refilling = resource;
+        WorldCopier copier = plugin.getWorldCopier();
+        copier.copy(resource.getFolder(), folder, DungeonsXL.EXCLUDED_FILES).getFuture()
+                .whenCompleteAsync((f, throwable) -> onFilled(resource, folder, generation, throwable == null), copier.getMainThreadExecutor());
+    }
+
+    private void onFilled(ResourceWorld resource, File folder, int generation, boolean success) {
+        refilling = null;
+        if (!success || !plugin.isLoaded() || generation != generations.getOrDefault(resource, 0)) {
+            discard(folder, null);
+            return;
+        }
+
+        World world = null;
+        if (preload) {
+            world = new WorldCreator(folder.getName()).environment(resource.getWorldEnvironment()).createWorld();
+            world.setAutoSave(false);
+        }
+        pools.computeIfAbsent(resource, r -> new ArrayDeque<>()).add(new PooledInstance(folder, world));
+        plugin.log("Pooled " + folder.getName() + " for " + resource.getName() + " (" + size(resource) + "/" + getTargetSize(resource) + ")");
+    }
+
+    private void discard(File folder, World world) {
+        if (world != null) {
+            Bukkit.unloadWorld(world, false);
+        }
+        plugin.getFolderDeleter().delete(folder);
+    }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.world.ResourceWorld;
+import de.erethon.dungeonsxl.world.InstancePool.PooledInstance;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.WorldCreator;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Queues the creation of game instances.
+ * <p>
+ * Requests are served by priority and, within the same priority, in the order in which they were submitted. Folders are copied off the main thread by the
+ * {@link WorldCopier} while earlier requests are loaded on the main thread, but no more than {@link #getLoadsPerTick()} worlds are loaded per tick.
+ * Requests for maps that are still {@link CrashRecovery#isRecovering(String) recovering} stay in the queue without blocking requests for other maps.
+ *
+ * @author Daniel Saukel
+ */
+public class InstanceScheduler {
+
+    /**
+     * A pending request for a game instance.
+     */
+    public class Request {
+
+        private ResourceWorld resource;
+        private int priority;
+        private long sequence;
+        private IntConsumer positionListener;
+        private CompletableFuture<World> future = new CompletableFuture<>();
+        private File folder;
+        private int position = -1;
+
+        Request(ResourceWorld resource, int priority, long sequence, IntConsumer positionListener) {
+            this.resource = resource;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.positionListener = positionListener;
+        }
+
+        /**
+         * Returns the resource world to instantiate.
+         *
+         * @return the resource world to instantiate
+         */
+        public ResourceWorld getResource() {
+            return resource;
+        }
+
+        /**
+         * Returns the priority; requests with a higher priority are served first.
+         *
+         * @return the priority
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Returns a future that is completed on the main thread with the loaded Bukkit world.
+         *
+         * @return a future that is completed on the main thread with the loaded Bukkit world
+         */
+        public CompletableFuture<World> getFuture() {
+            return future;
+        }
+
+        /**
+         * Returns the position in the queue, starting with 1, or 0 if the instance is already being prepared.
+         *
+         * @return the position in the queue or 0 if the instance is already being prepared
+         */
+        public int getQueuePosition() {
+            return Math.max(position, 0);
+        }
+
+        /**
+         * Withdraws the request. If the world folder is already being copied, the copy is cancelled.
+         */
+        public void cancel() {
+            if (future.isDone()) {
+                return;
+            }
+            if (pending.remove(this)) {
+                updatePositions();
+            } else if (ready.remove(this)) {
+                plugin.getFolderDeleter().delete(folder);
+            } else if (folder != null) {
+                plugin.getWorldCopier().cancel(folder.getName());
+            }
+            future.cancel(false);
+        }
+
+        private void setPosition(int position) {
+            if (this.position == position) {
+                return;
+            }
+            this.position = position;
+            if (positionListener != null) {
+                positionListener.accept(position);
+            }
+        }
+
+    }
+
+    private DungeonsXL plugin;
+    private int maxParallelCopies;
+    private int loadsPerTick;
+
+    private NavigableSet<Request> pending = new TreeSet<>(Comparator.<Request>comparingInt(r -> -r.priority).thenComparingLong(r -> r.sequence));
+    private Deque<Request> ready = new ArrayDeque<>();
+    private int copying;
+    private long sequence;
+    private BukkitTask task;
+
+    /**
+     * @param plugin            the plugin instance
+     * @param maxParallelCopies the amount of world folders that may be copied at the same time
+     * @param loadsPerTick      the amount of worlds that may be loaded per tick
+     */
+    public InstanceScheduler(DungeonsXL plugin, int maxParallelCopies, int loadsPerTick) {
+        this.plugin = plugin;
+        this.maxParallelCopies = maxParallelCopies;
+        this.loadsPerTick = loadsPerTick;
+    }
+
+    /**
+     * Starts processing the queue.
+     */
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops processing the queue and cancels all pending requests.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (Request request : new ArrayDeque<>(pending)) {
+            request.cancel();
+        }
+        for (Request request : new ArrayDeque<>(ready)) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Queues a request for a new game instance of the resource.
+     *
+     * @param resource         the resource world to instantiate
+     * @param priority         the priority; requests with a higher priority are served first
+     * @param positionListener notified with the new {@link Request#getQueuePosition() queue position} whenever it changes; may be null
+     * @return the request
+     */
+    public Request submit(ResourceWorld resource, int priority, IntConsumer positionListener) {
+        Request request = new Request(resource, priority, sequence++, positionListener);
+        pending.add(request);
+        updatePositions();
+        return request;
+    }
+
+    /**
+     * Returns the amount of requests that wait for their world folder to be copied.
+     *
+     * @return the amount of requests that wait for their world folder to be copied
+     */
+    public int getQueueSize() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the amount of worlds that may be loaded per tick.
+     *
+     * @return the amount of worlds that may be loaded per tick
+     */
+    public int getLoadsPerTick() {
+        return loadsPerTick;
+    }
+
+    /**
+     * Returns true if no request is pending, being copied or waiting to be loaded.
+     *
+     * @return true if no request is pending, being copied or waiting to be loaded
+     */
+    public boolean isIdle() {
+        return pending.isEmpty() && ready.isEmpty() && copying == 0;
+    }
+
+    private void tick() {
+        boolean dequeued = false;
+        CrashRecovery recovery = plugin.getCrashRecovery();
+        Iterator<Request> iterator = pending.iterator();
+        while (copying < maxParallelCopies && iterator.hasNext()) {
+            Request request = iterator.next();
+            // Held back until the resource is not going to be overwritten anymore
+            if (recovery.isRecovering(request.resource.getName())) {
+                continue;
+            }
+            iterator.remove();
+            prepare(request);
+            dequeued = true;
+        }
+        if (dequeued) {
+            updatePositions();
+        }
+
+        for (int i = 0; i < loadsPerTick && !ready.isEmpty(); i++) {
+            load(ready.poll());
+        }
+    }
+
+    private void prepare(Request request) {
+        request.setPosition(0);
+        PooledInstance pooled = plugin.getInstancePool().poll(request.resource);
+        if (pooled != null) {
+            request.folder = pooled.getFolder();
+            if (pooled.getWorld() != null) {
+                request.future.complete(pooled.getWorld());
+            } else {
+                ready.add(request);
+            }
+            return;
+        }
+
+        request.folder = plugin.createGameInstanceFolder();
+        copying++;
+        WorldCopier copier = plugin.getWorldCopier();
+        copier.copy(request.resource.getFolder(), request.folder, DungeonsXL.EXCLUDED_FILES).getFuture().whenCompleteAsync((f, throwable) -> {
+            copying--;
+            if (request.future.isDone()) {
+                // Cancelled after the copy had already finished
+                if (throwable == null) {
+                    plugin.getFolderDeleter().delete(request.folder);
+                }
+                return;
+            }
+            if (throwable != null) {
+                request.future.completeExceptionally(throwable);
+            } else {
+                ready.add(request);
+            }
+        }, copier.getMainThreadExecutor());
+    }
+
+    private void load(Request request) {
+        World world;
+        try {
+            world = new WorldCreator(request.folder.getName()).environment(request.resource.getWorldEnvironment()).createWorld();
+        } catch (RuntimeException exception) {
+            plugin.getFolderDeleter().delete(request.folder);
+            request.future.completeExceptionally(exception);
+            return;
+        }
+        if (world == null) {
+            plugin.getFolderDeleter().delete(request.folder);
+            request.future.completeExceptionally(new IllegalStateException("Could not load " + request.folder.getName()));
+            return;
+        }
+        // Game instances are never saved; if the region files are linked, saving them would change the resource
+        world.setAutoSave(false);
+        request.future.complete(world);
+    }
+
+    private void updatePositions() {
+        int position = 1;
+        for (Request request : pending) {
+            request.setPosition(position++);
+        }
+    }
+
+}
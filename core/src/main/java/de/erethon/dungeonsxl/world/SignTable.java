@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.api.DungeonsAPI;
+import de.erethon.dungeonsxl.api.sign.DungeonSign;
+import de.erethon.dungeonsxl.api.sign.SignFactory;
+import de.erethon.dungeonsxl.api.sign.SignRegistry;
+import de.erethon.dungeonsxl.api.world.InstanceWorld;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.bukkit.World;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Sign;
+
+/**
+ * A precompiled table of the dungeon signs of a resource world.
+ * <p>
+ * The table stores the type, position and lines of every sign. Instances created from the table call the {@link SignFactory}s of the types directly
+ * without looking them up by name. The table is persisted next to the map and must be rebuilt when the map is saved.
+ * <p>
+ * The arguments and the trigger line are stored as raw lines, not in a parsed form, because sign types parse their lines themselves and have no API to
+ * restore parsed state; creating a sign from the table therefore skips the type lookup and the block scan, but not the parsing of its lines.
+ *
+ * @author Daniel Saukel
+ */
+public class SignTable {
+
+    public static final String FILE_NAME = "DXLSigns.table";
+    public static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+    private static final int MAGIC = 0x44584C53;
+    private static final int VERSION = 1;
+
+    /**
+     * A compiled sign.
+     */
+    public static class Entry {
+
+        private String type;
+        private int x, y, z;
+        private String[] lines;
+        private SignFactory factory;
+
+        Entry(String type, int x, int y, int z, String[] lines) {
+            this.type = type;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.lines = lines;
+        }
+
+        /**
+         * Returns the name of the sign class.
+         *
+         * @return the name of the sign class
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Returns the X coordinate of the sign.
+         *
+         * @return the X coordinate of the sign
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * Returns the Y coordinate of the sign.
+         *
+         * @return the Y coordinate of the sign
+         */
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * Returns the Z coordinate of the sign.
+         *
+         * @return the Z coordinate of the sign
+         */
+        public int getZ() {
+            return z;
+        }
+
+        /**
+         * Returns a copy of the lines of the sign including the trigger line.
+         *
+         * @return a copy of the lines of the sign
+         */
+        public String[] getLines() {
+            return lines.clone();
+        }
+
+    }
+
+    private List<Entry> entries;
+
+    private SignTable(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Compiles the signs of an instance.
+     *
+     * @param registry the sign registry
+     * @param signs    the signs
+     * @return the compiled table or null if a sign class is not registered
+     */
+    public static SignTable compile(SignRegistry registry, Collection<DungeonSign> signs) {
+        List<Entry> entries = new ArrayList<>(signs.size());
+        for (DungeonSign sign : signs) {
+            BlockState state = sign.getSign();
+            Entry entry = new Entry(sign.getClass().getName(), state.getX(), state.getY(), state.getZ(), sign.getLines().clone());
+            entry.factory = registry.getFactory(sign.getClass());
+            if (entry.factory == null) {
+                return null;
+            }
+            entries.add(entry);
+        }
+        return new SignTable(entries);
+    }
+
+    /**
+     * Loads a table and resolves the sign types.
+     *
+     * @param registry the sign registry
+     * @param file     the file
+     * @return the table or null if it cannot be read or contains signs of types that are not registered
+     * @throws IOException if the file cannot be read
+     */
+    public static SignTable load(SignRegistry registry, File file) throws IOException {
+        List<Entry> entries;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int size = in.readInt();
+            entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String type = in.readUTF();
+                int x = in.readInt();
+                int y = in.readInt();
+                int z = in.readInt();
+                String[] lines = new String[in.readUnsignedByte()];
+                for (int j = 0; j < lines.length; j++) {
+                    lines[j] = in.readUTF();
+                }
+                entries.add(new Entry(type, x, y, z, lines));
+            }
+        }
+
+        for (Entry entry : entries) {
+            entry.factory = registry.getFactoryByClassName(entry.type);
+            if (entry.factory == null) {
+                return null;
+            }
+        }
+        return new SignTable(entries);
+    }
+
+    /**
+     * Saves the table atomically.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getParentFile(), TEMP_FILE_NAME);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.type);
+                out.writeInt(entry.x);
+                out.writeInt(entry.y);
+                out.writeInt(entry.z);
+                out.writeByte(entry.lines.length);
+                for (String line : entry.lines) {
+                    out.writeUTF(line != null ? line : "");
+                }
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the compiled signs.
+     *
+     * @return the compiled signs
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Creates the signs of the table in the instance.
+     * <p>
+     * Entries whose block is not a sign anymore are skipped. The created signs are not yet added to the instance.
+     *
+     * @param api      the API instance
+     * @param instance the instance
+     * @return the created signs
+     */
+    public List<DungeonSign> instantiate(DungeonsAPI api, InstanceWorld instance) {
+        World world = instance.getWorld();
+        List<DungeonSign> signs = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            BlockState state = world.getBlockAt(entry.x, entry.y, entry.z).getState();
+            if (!(state instanceof Sign)) {
+                continue;
+            }
+            signs.add(entry.factory.create(api, (Sign) state, entry.lines.clone(), instance));
+        }
+        return signs;
+    }
+
+}
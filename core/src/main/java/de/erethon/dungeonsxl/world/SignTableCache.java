@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.sign.DungeonSign;
+import de.erethon.dungeonsxl.api.world.ResourceWorld;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Caches the {@link SignTable}s of the resource worlds in memory and on disk.
+ * <p>
+ * Game world implementations should create their signs from {@link #get(ResourceWorld)} if it returns a table. Otherwise, they parse the signs as
+ * usual and pass them to {@link #put(ResourceWorld, Collection)} sothat the next instance can skip parsing. Tables are invalidated when the map is saved.
+ *
+ * @author Daniel Saukel
+ */
+public class SignTableCache {
+
+    private DungeonsXL plugin;
+    private Map<String, SignTable> tables = new HashMap<>();
+
+    public SignTableCache(DungeonsXL plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Returns the table of the resource world, loading it from disk if necessary.
+     * <p>
+     * A table on disk that is older than the sign data of the map is ignored.
+     *
+     * @param resource the resource world
+     * @return the table of the resource world or null if it has to be compiled
+     */
+    public SignTable get(ResourceWorld resource) {
+        SignTable table = tables.get(resource.getName());
+        if (table != null) {
+            return table;
+        }
+
+        File file = new File(resource.getFolder(), SignTable.FILE_NAME);
+        File signData = new File(resource.getFolder(), DirtyRegionTracker.SIGN_DATA);
+        if (!file.exists() || file.lastModified() < signData.lastModified()) {
+            return null;
+        }
+        try {
+            table = SignTable.load(plugin.getSignRegistry(), file);
+        } catch (IOException exception) {
+            plugin.getLogger().log(Level.WARNING, "Could not read the sign table of " + resource.getName(), exception);
+        }
+        if (table != null) {
+            tables.put(resource.getName(), table);
+        }
+        return table;
+    }
+
+    /**
+     * Compiles the signs of a freshly parsed instance and stores the table.
+     *
+     * @param resource the resource world the signs were loaded from
+     * @param signs    the parsed signs
+     * @return the compiled table or null if the signs cannot be compiled
+     */
+    public SignTable put(ResourceWorld resource, Collection<DungeonSign> signs) {
+        SignTable table = SignTable.compile(plugin.getSignRegistry(), signs);
+        if (table == null) {
+            return null;
+        }
+        tables.put(resource.getName(), table);
+        try {
+            table.save(new File(resource.getFolder(), SignTable.FILE_NAME));
+        } catch (IOException exception) {
+            plugin.getLogger().log(Level.WARNING, "Could not save the sign table of " + resource.getName(), exception);
+        }
+        return table;
+    }
+
+    /**
+     * Removes the table of the resource world from memory and disk.
+     *
+     * @param resource the resource world
+     */
+    public void invalidate(ResourceWorld resource) {
+        tables.remove(resource.getName());
+        new File(resource.getFolder(), SignTable.FILE_NAME).delete();
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies world folders off the main thread.
+ * <p>
+ * The folder tree is walked once; the files are then copied in parallel using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * sothat the operating system can copy them without passing the data through the JVM.
+ * <p>
+ * In {@link Mode#LINK}, region files are hard linked instead of copied. All instances then share the region files of the resource on disk, which saves both
+ * time and space, while files the server rewrites when it loads a world, like level.dat, are still copied. Deleting an instance only removes its links, never
+ * the originals. If the file system does not support hard links, the copier falls back to copying.
+ *
+ * @author Daniel Saukel
+ */
+public class WorldCopier {
+
+    /**
+     * How files are materialized in the destination folder.
+     */
+    public enum Mode {
+        /**
+         * All files are copied.
+         */
+        COPY,
+        /**
+         * Region files are hard linked, everything else is copied. Only use this for instances that never save their chunks, i.e. game instances with
+         * autosave disabled that are unloaded without saving, because writes to a linked file change the original as well. The {@link InstanceScheduler}
+         * and the {@link InstancePool} disable autosave for every world they load. Note that a manual save-all still saves worlds with autosave disabled.
+         */
+        LINK
+    }
+
+    /**
+     * The file extension of the region files that are linked in {@link Mode#LINK}.
+     */
+    public static final String LINKED_EXTENSION = ".mca";
+
+    /**
+     * A running copy operation.
+     */
+    public class CopyTask {
+
+        private File dest;
+        private Mode mode;
+        private CompletableFuture<File> future;
+        private volatile boolean cancelled;
+        private volatile boolean linkUnsupported;
+
+        CopyTask(File dest, Mode mode) {
+            this.dest = dest;
+            this.mode = mode;
+        }
+
+        /**
+         * Returns the folder the world is copied to.
+         *
+         * @return the folder the world is copied to
+         */
+        public File getDestination() {
+            return dest;
+        }
+
+        /**
+         * Returns how the files are materialized.
+         *
+         * @return how the files are materialized
+         */
+        public Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * Returns a future that is completed with the {@link #getDestination() destination} when all files are copied.
+         * <p>
+         * The future is completed on a worker thread. Use {@link WorldCopier#getMainThreadExecutor()} for dependent actions that use the Bukkit API, like
+         * loading the world.
+         *
+         * @return a future that is completed with the destination when all files are copied
+         */
+        public CompletableFuture<File> getFuture() {
+            return future;
+        }
+
+        /**
+         * Returns if the task has been cancelled.
+         *
+         * @return if the task has been cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Cancels the task. Files that are not yet copied are skipped and the destination folder is deleted once the running transfers have stopped.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+    private DungeonsXL plugin;
+    private ExecutorService executor;
+    private Executor mainThreadExecutor;
+    private Mode defaultMode;
+    private Map<String, CopyTask> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * @param plugin      the plugin instance
+     * @param threads     the amount of files that may be copied in parallel
+     * @param defaultMode the mode used by {@link #copy(File, File, String...)}
+     */
+    public WorldCopier(DungeonsXL plugin, int threads, Mode defaultMode) {
+        this.plugin = plugin;
+        this.defaultMode = defaultMode;
+        AtomicInteger threadId = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "DungeonsXL World Copier #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        mainThreadExecutor = r -> {
+            if (plugin.isEnabled()) {
+                plugin.getServer().getScheduler().runTask(plugin, r);
+            } else {
+                r.run();
+            }
+        };
+    }
+
+    /**
+     * Returns an executor that runs tasks on the main thread.
+     *
+     * @return an executor that runs tasks on the main thread
+     */
+    public Executor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * Returns the mode used by {@link #copy(File, File, String...)}.
+     *
+     * @return the mode used by {@link #copy(File, File, String...)}
+     */
+    public Mode getDefaultMode() {
+        return defaultMode;
+    }
+
+    /**
+     * Starts copying a world folder in the {@link #getDefaultMode() default mode}.
+     *
+     * @param source   the folder to copy
+     * @param dest     the folder to copy to. Its name is used to identify the task
+     * @param excluded names of files and directories in the source folder that shall not be copied
+     * @return the copy task
+     */
+    public CopyTask copy(File source, File dest, String... excluded) {
+        return copy(source, dest, defaultMode, excluded);
+    }
+
+    /**
+     * Starts copying a world folder.
+     *
+     * @param source   the folder to copy
+     * @param dest     the folder to copy to. Its name is used to identify the task
+     * @param mode     how the files are materialized
+     * @param excluded names of files and directories in the source folder that shall not be copied
+     * @return the copy task
+     */
+    public CopyTask copy(File source, File dest, Mode mode, String... excluded) {
+        CopyTask task = new CopyTask(dest, mode);
+        tasks.put(dest.getName(), task);
+        List<String> excludedList = Arrays.asList(excluded);
+        task.future = CompletableFuture.supplyAsync(() -> walk(source.toPath(), dest.toPath(), excludedList), executor)
+                .thenCompose(files -> {
+                    CompletableFuture<?>[] transfers = new CompletableFuture<?>[files.size()];
+                    for (int i = 0; i < transfers.length; i++) {
+                        Path[] pair = files.get(i);
+                        transfers[i] = CompletableFuture.runAsync(() -> transfer(task, pair[0], pair[1]), executor);
+                    }
+                    return CompletableFuture.allOf(transfers);
+                })
+                .thenApply(v -> {
+                    if (task.cancelled) {
+                        throw new CancellationException("Copying " + dest.getName() + " has been cancelled");
+                    }
+                    return dest;
+                });
+        task.future.whenComplete((f, throwable) -> {
+            tasks.remove(dest.getName(), task);
+            if (throwable != null) {
+                plugin.getFolderDeleter().delete(dest);
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Returns the running task that copies to the folder with the given name or null if there is none.
+     *
+     * @param destName the name of the destination folder
+     * @return the running task that copies to the folder with the given name or null if there is none
+     */
+    public CopyTask getTask(String destName) {
+        return tasks.get(destName);
+    }
+
+    /**
+     * Cancels the running task that copies to the folder with the given name if there is one.
+     *
+     * @param destName the name of the destination folder
+     */
+    public void cancel(String destName) {
+        CopyTask task = tasks.get(destName);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Cancels all tasks, stops the worker threads and waits until they have stopped.
+     * <p>
+     * The futures of the tasks that are still running are then completed exceptionally with a {@link CancellationException}, so their folders are only
+     * deleted when nothing writes into them anymore.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the worker threads have stopped, false if the timeout elapsed first
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        List<CopyTask> running = new ArrayList<>(tasks.values());
+        running.forEach(CopyTask::cancel);
+        executor.shutdownNow();
+        boolean terminated;
+        try {
+            terminated = executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            terminated = false;
+        }
+        for (CopyTask task : running) {
+            task.future.completeExceptionally(new CancellationException("Copying " + task.dest.getName() + " has been cancelled by shutdown"));
+        }
+        return terminated;
+    }
+
+    /**
+     * Creates the directory tree in the destination and lists the files to copy as source / destination pairs.
+     */
+    private List<Path[]> walk(Path source, Path dest, List<String> excluded) {
+        List<Path[]> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (!dir.equals(source) && excluded.contains(dir.getFileName().toString())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    Files.createDirectories(dest.resolve(source.relativize(dir)));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!excluded.contains(file.getFileName().toString())) {
+                        files.add(new Path[]{file, dest.resolve(source.relativize(file))});
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return files;
+    }
+
+    private void transfer(CopyTask task, Path from, Path to) {
+        if (task.cancelled) {
+            return;
+        }
+        if (task.mode == Mode.LINK && !task.linkUnsupported && from.getFileName().toString().endsWith(LINKED_EXTENSION)) {
+            try {
+                Files.createLink(to, from);
+                return;
+            } catch (UnsupportedOperationException | IOException exception) {
+                // E.g. FAT32 or a destination on another file system
+                task.linkUnsupported = true;
+            }
+        }
+        try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size && !task.cancelled) {
+                position += in.transferTo(position, size - position, out);
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012-2021 Frank Baumann
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.erethon.dungeonsxl.world;
+
+import de.erethon.dungeonsxl.DungeonsXL;
+import de.erethon.dungeonsxl.api.dungeon.Game;
+import de.erethon.dungeonsxl.api.event.world.EditWorldGenerateEvent;
+import de.erethon.dungeonsxl.api.event.world.EditWorldSaveEvent;
+import de.erethon.dungeonsxl.api.event.world.InstanceWorldUnloadEvent;
+import de.erethon.dungeonsxl.api.world.EditWorld;
+import de.erethon.dungeonsxl.api.world.GameWorld;
+import de.erethon.dungeonsxl.api.world.InstanceWorld;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+/**
+ * @author Daniel Saukel
+ */
+public class WorldListener implements Listener {
+
+    private DungeonsXL plugin;
+
+    public WorldListener(DungeonsXL plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEditWorldGenerate(EditWorldGenerateEvent event) {
+        plugin.indexInstance(event.getEditWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEditWorldSave(EditWorldSaveEvent event) {
+        if (event.getChangedFiles() != null && event.getChangedFiles().isEmpty()) {
+            return;
+        }
+        plugin.getInstancePool().evict(event.getEditWorld().getResource());
+        plugin.getSignTableCache().invalidate(event.getEditWorld().getResource());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInstanceUnload(InstanceWorldUnloadEvent event) {
+        InstanceWorld instance = event.getInstance();
+        plugin.unindexInstance(instance);
+        plugin.getTimerWheel().cancelAll(instance);
+        if (instance instanceof GameWorld) {
+            Game game = ((GameWorld) instance).getGame();
+            if (game != null) {
+                plugin.unindexGame(game);
+            }
+            plugin.unindexDungeonMobs((GameWorld) instance);
+            plugin.getSpawnScheduler().cancel((GameWorld) instance);
+            if (plugin.getDNPCRegistry() != null) {
+                plugin.getDNPCRegistry().getPool().releaseAll(instance.getWorld());
+            }
+        } else if (instance instanceof EditWorld) {
+            plugin.getDirtyRegionTracker().stop((EditWorld) instance);
+        }
+    }
+
+}